@@ -1,9 +1,6 @@
 package commands;
 
-import com.sun.jdi.*;
-import com.sun.jdi.request.BreakpointRequest;
 import models.Breakpoint;
-import java.util.List;
 
 public class BreakOnCountCommand implements Command {
     private String fileName;
@@ -18,41 +15,7 @@ public class BreakOnCountCommand implements Command {
 
     @Override
     public CommandResult execute(DebuggerState state) throws Exception {
-        VirtualMachine vm = state.getVm();
-
-        for (ReferenceType refType : vm.allClasses()) {
-            try {
-                if (refType.sourceName().equals(fileName)) {
-                    List<Location> locations = refType.locationsOfLine(lineNumber);
-
-                    if (!locations.isEmpty()) {
-                        Location loc = locations.get(0);
-
-                        BreakpointRequest req = vm.eventRequestManager()
-                                .createBreakpointRequest(loc);
-                        req.enable();
-
-                        String key = fileName + ":" + lineNumber;
-                        Breakpoint bp = new Breakpoint(
-                                fileName,
-                                lineNumber,
-                                req,
-                                Breakpoint.BreakpointType.ON_COUNT,
-                                count
-                        );
-                        state.getBreakpoints().put(key, bp);
-
-                        return CommandResult.success(
-                                "Conditional breakpoint set at " + fileName + ":" + lineNumber +
-                                        " (will stop after " + count + " hits)",
-                                bp
-                        );
-                    }
-                }
-            } catch (AbsentInformationException e) {
-            }
-        }
-
-        return CommandResult.error("Could not set breakpoint at " + fileName + ":" + lineNumber);
+        return state.getExecutionStrategy().setBreakpoint(
+                state, fileName, lineNumber, Breakpoint.BreakpointType.ON_COUNT, count);
     }
-}
\ No newline at end of file
+}
@@ -13,7 +13,11 @@ public class CommandInterpreter {
     private void registerCommands() {
         commandFactories.put("step", args -> new StepCommand());
         commandFactories.put("step-over", args -> new StepOverCommand());
+        commandFactories.put("step-out", args -> new StepOutCommand());
+        commandFactories.put("step-back", args -> new StepBackCommand());
+        commandFactories.put("step-over-back", args -> new StepOverBackCommand());
         commandFactories.put("continue", args -> new ContinueCommand());
+        commandFactories.put("reverse-continue", args -> new ReverseContinueCommand());
         commandFactories.put("frame", args -> new FrameCommand());
         commandFactories.put("temporaries", args -> new TemporariesCommand());
         commandFactories.put("stack", args -> new StackCommand());
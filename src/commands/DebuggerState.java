@@ -21,11 +21,16 @@ public class DebuggerState {
     private TimelineManager timelineManager;
 
     public DebuggerState(VirtualMachine vm) {
+        this(vm, new TimelineManager());
+    }
+
+    // Chronologie déjà enregistrée (fichier de trace) : vm vaut null, seul le replay est possible
+    public DebuggerState(VirtualMachine vm, TimelineManager timelineManager) {
         this.vm = vm;
         this.breakpoints = new HashMap<>();
         this.methodBreakpoints = new HashMap<>();
         this.running = true;
-        this.timelineManager = new TimelineManager();
+        this.timelineManager = timelineManager;
     }
     private ExecutionStrategy executionStrategy;
 
@@ -4,6 +4,7 @@ import com.sun.jdi.*;
 import models.Variable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class ReceiverVariablesCommand implements Command {
     @Override
@@ -18,9 +19,10 @@ public class ReceiverVariablesCommand implements Command {
         }
 
         List<Variable> variables = new ArrayList<>();
-        for (Field field : receiver.referenceType().allFields()) {
-            Value value = receiver.getValue(field);
-            variables.add(new Variable(field.name(), field.typeName(), value));
+        List<Field> fields = receiver.referenceType().allFields();
+        Map<Field, Value> values = receiver.getValues(fields);
+        for (Field field : fields) {
+            variables.add(new Variable(field.name(), field.typeName(), values.get(field)));
         }
 
         return CommandResult.success("Receiver variables:", variables);
@@ -0,0 +1,8 @@
+package commands;
+
+public class ReverseContinueCommand implements Command {
+    @Override
+    public CommandResult execute(DebuggerState state) throws Exception {
+        return state.getExecutionStrategy().reverseContinue(state);
+    }
+}
@@ -0,0 +1,8 @@
+package commands;
+
+public class StepOutCommand implements Command {
+    @Override
+    public CommandResult execute(DebuggerState state) throws Exception {
+        return state.getExecutionStrategy().stepOut(state);
+    }
+}
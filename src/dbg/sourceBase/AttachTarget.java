@@ -0,0 +1,67 @@
+package dbg.sourceBase;
+
+import com.sun.jdi.Bootstrap;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.connect.AttachingConnector;
+import com.sun.jdi.connect.Connector;
+import com.sun.jdi.connect.IllegalConnectorArgumentsException;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * VM déjà lancée à laquelle le débogueur s'attache au lieu d'en lancer une nouvelle.
+ * La cible doit avoir été démarrée avec l'agent JDWP en serveur :
+ * -agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=5005
+ * "5005" ou "hote:5005" : connecteur SocketAttach ; "pid:1234" : connecteur ProcessAttach.
+ */
+public class AttachTarget {
+    private final String host;
+    private final int port;
+    private final long pid;
+
+    private AttachTarget(String host, int port, long pid) {
+        this.host = host;
+        this.port = port;
+        this.pid = pid;
+    }
+
+    public static AttachTarget parse(String value) {
+        try {
+            if (value.startsWith("pid:")) {
+                return new AttachTarget(null, -1, Long.parseLong(value.substring("pid:".length())));
+            }
+            int colon = value.lastIndexOf(':');
+            String host = colon < 0 ? "localhost" : value.substring(0, colon);
+            return new AttachTarget(host, Integer.parseInt(value.substring(colon + 1)), -1);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--attach attend port, hote:port ou pid:N : " + value);
+        }
+    }
+
+    public VirtualMachine attach() throws IOException, IllegalConnectorArgumentsException {
+        AttachingConnector connector = connector(pid >= 0 ? "com.sun.jdi.ProcessAttach" : "com.sun.jdi.SocketAttach");
+        Map<String, Connector.Argument> arguments = connector.defaultArguments();
+        if (pid >= 0) {
+            arguments.get("pid").setValue(String.valueOf(pid));
+        } else {
+            arguments.get("hostname").setValue(host);
+            arguments.get("port").setValue(String.valueOf(port));
+        }
+        return connector.attach(arguments);
+    }
+
+    private static AttachingConnector connector(String name) {
+        for (AttachingConnector connector : Bootstrap.virtualMachineManager().attachingConnectors()) {
+            if (connector.name().equals(name)) {
+                return connector;
+            }
+        }
+        throw new IllegalStateException("Connecteur " + name + " indisponible sur cette JVM");
+    }
+
+    @Override
+    public String toString() {
+        return pid >= 0 ? "pid " + pid : host + ":" + port;
+    }
+}
@@ -1,10 +1,37 @@
 package dbg.sourceBase;
 
+import timetravel.RecordingOptions;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
 public class JDISimpleDebugger {
     public static void main(String[] args) throws Exception {
 
         ScriptableDebugger debuggerInstance = new ScriptableDebugger();
-        debuggerInstance.attachTo(JDISimpleDebuggee.class);
+        // --open=trace.bin : replay d'un fichier de trace écrit par --save, sans relancer la VM cible
+        if (args.length == 1 && args[0].startsWith("--open=")) {
+            debuggerInstance.openTrace(Paths.get(args[0].substring("--open=".length())));
+            return;
+        }
+        // --attach=5005, --attach=hote:5005 ou --attach=pid:1234 : fenêtre d'enregistrement sur une VM déjà lancée
+        AttachTarget attachTarget = null;
+        List<String> recordingArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--attach=")) {
+                attachTarget = AttachTarget.parse(arg.substring("--attach=".length()));
+            } else {
+                recordingArgs.add(arg);
+            }
+        }
+        // --mode=method pour n'enregistrer que les entrées/sorties de méthodes, --lines=Classe.methode pour le détail
+        debuggerInstance.setRecordingOptions(RecordingOptions.fromArgs(recordingArgs.toArray(new String[0])));
+        if (attachTarget != null) {
+            debuggerInstance.attachToRunning(attachTarget);
+        } else {
+            debuggerInstance.attachTo(JDISimpleDebuggee.class);
+        }
 
     }
 }
@@ -8,6 +8,7 @@ import commands.*;
 import models.*;
 import timetravel.*;
 import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
 
 public class ScriptableDebugger {
@@ -15,10 +16,19 @@ public class ScriptableDebugger {
     private VirtualMachine vm;
     private DebuggerState state;
     private CommandInterpreter interpreter;
-    private boolean isVmRunning = true;
+    private RecordingOptions recordingOptions;
+    private TraceRecorder recorder;
+    // Entrée partagée par la fenêtre d'enregistrement d'une session attachée et la boucle de replay
+    private final Scanner input;
 
     public ScriptableDebugger() {
         this.interpreter = new CommandInterpreter();
+        this.recordingOptions = new RecordingOptions();
+        this.input = new Scanner(System.in);
+    }
+
+    public void setRecordingOptions(RecordingOptions recordingOptions) {
+        this.recordingOptions = recordingOptions;
     }
 
     public VirtualMachine connectAndLaunchVM() throws IOException,
@@ -36,15 +46,8 @@ public class ScriptableDebugger {
         try {
             vm = connectAndLaunchVM();
             state = new DebuggerState(vm);
-            isVmRunning = true;
-
-
-            state.getTimelineManager().setCallback(snapshot -> {
-                System.out.println("\n=== Time-Travel Restoration ===");
-                System.out.println("Restoring to: " + snapshot);
-
-
-            });
+            recorder = new TraceRecorder(vm, state.getTimelineManager(), recordingOptions, new RecordingProgress());
+            setRestoreCallback();
 
             enableClassPrepareRequest(vm);
             startDebugger();
@@ -56,100 +59,177 @@ public class ScriptableDebugger {
     }
 
     public void enableClassPrepareRequest(VirtualMachine vm) {
-        ClassPrepareRequest r = vm.eventRequestManager().createClassPrepareRequest();
-        r.addClassFilter(debugClass.getName());
-        r.enable();
+        recorder.enableClassPrepareRequest(debugClass.getName());
     }
 
     public void startDebugger() throws InterruptedException, AbsentInformationException {
         // --- PHASE 1 : ENREGISTREMENT ---
         System.out.println("=== Phase 1: Capture de l'exécution (Automatique) ===");
+        System.out.println("Mode d'enregistrement : " + recordingOptions);
         recordTrace();
+        saveTrace();
 
         // --- PHASE 2 : REPLAY ---
+        printRecordingSummary("Le programme est terminé.");
+        startReplay();
+    }
+
+    // Session attachée à une VM déjà lancée : l'enregistrement couvre une fenêtre choisie à la demande
+    // (Entrée pour la commencer, Entrée ou --window pour la fermer), puis la cible continue sans le débogueur
+    public void attachToRunning(AttachTarget target) {
+        try {
+            vm = target.attach();
+            state = new DebuggerState(vm);
+            recorder = new TraceRecorder(vm, state.getTimelineManager(), recordingOptions, new RecordingProgress());
+            setRestoreCallback();
+
+            System.out.println("Attaché à " + target + " (" + vm.name() + " " + vm.version() + ")");
+            System.out.println("Mode d'enregistrement : " + recordingOptions);
+            System.out.print("Entrée pour commencer l'enregistrement... ");
+            input.nextLine();
+            recordWindow();
+            try {
+                vm.dispose();
+                System.out.println("Détaché de " + target + " : la VM cible continue à pleine vitesse.");
+            } catch (VMDisconnectedException e) {
+                // La cible s'est terminée pendant la fenêtre
+            }
+            saveTrace();
+
+            printRecordingSummary("Fenêtre d'enregistrement fermée.");
+            startReplay();
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Enregistrement sur un thread à part, jusqu'à Entrée ou la fin de la durée donnée par --window
+    private void recordWindow() throws InterruptedException {
+        recorder.recordRunningThreads();
+        Thread recording = new Thread(() -> {
+            try {
+                recorder.record();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                System.err.println("Erreur pendant l'enregistrement : " + e.getMessage());
+            }
+        }, "timetravel-recorder");
+        recording.start();
+        if (recordingOptions.getWindowMillis() > 0) {
+            System.out.println("=== Phase 1: Capture pendant " + recordingOptions.getWindowMillis() + " ms ===");
+        } else {
+            System.out.println("=== Phase 1: Capture en cours, Entrée pour l'arrêter ===");
+            input.nextLine();
+            recorder.stop();
+        }
+        recording.join();
+    }
+
+    private void printRecordingSummary(String status) {
         System.out.println("\n=== Phase 2: Mode Replay (Simulation) ===");
-        System.out.println("Le programme est terminé. Vous naviguez dans " +
+        System.out.println(status + " Vous naviguez dans " +
                 state.getTimelineManager().getTimelineSize() + " snapshots.");
+        System.out.println(String.format("Requêtes JDWP par snapshot : %.2f",
+                state.getTimelineManager().getJdwpRoundTripsPerSnapshot()));
+        System.out.println("Événements JDI traités : " + recorder.getEventCount());
+        System.out.println("File d'indexation (max en attente) : " + recorder.getMaxIndexBacklog());
+        if (recordingOptions.isArmed()) {
+            System.out.println(recorder.getTriggerSnapshotId() >= 0
+                    ? "Déclencheur : " + recorder.getTriggerDescription() + " au snapshot #" + recorder.getTriggerSnapshotId()
+                    : "Aucun déclencheur atteint : seuls les " + recordingOptions.getPreTriggerSteps() + " derniers pas sont gardés");
+        }
+    }
+
+    // Replay d'un fichier de trace écrit par --save, sans lancer de VM cible
+    public void openTrace(Path traceFile) {
+        try {
+            state = new DebuggerState(null, TimelineManager.open(traceFile));
+            setRestoreCallback();
+
+            System.out.println("=== Mode Replay : " + traceFile + " ===");
+            System.out.println("Vous naviguez dans " + state.getTimelineManager().getTimelineSize() + " snapshots.");
+            startReplay();
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void setRestoreCallback() {
+        state.getTimelineManager().setCallback(snapshot -> {
+            System.out.println("\n=== Time-Travel Restoration ===");
+            System.out.println("Restoring to: " + snapshot);
+        });
+    }
+
+    private void startReplay() {
+        if (state.getTimelineManager().getFirstSnapshotId() > 0) {
+            System.out.println("Snapshots supprimés (flight recorder ou avant le déclencheur) : " + state.getTimelineManager().getFirstSnapshotId());
+        }
+        if (state.getTimelineManager().getSpilledSegmentCount() > 0) {
+            System.out.println("Tranches déversées sur disque : " + state.getTimelineManager().getSpilledSegmentCount()
+                    + " (tranches de " + state.getTimelineManager().getSegmentSize() + " snapshots)");
+        }
+        for (ThreadTimeline thread : state.getTimelineManager().getThreadTimelines()) {
+            System.out.println("  " + thread);
+        }
 
         state.setExecutionStrategy(new ReplayExecutionStrategy());
 
 
         if (state.getTimelineManager().getTimelineSize() > 0) {
-            state.getTimelineManager().travelToSnapshot(0);
+            state.getTimelineManager().travelToSnapshot(state.getTimelineManager().getFirstSnapshotId());
         }
 
         inputLoop();
+        closeTimeline();
     }
 
-    private void recordTrace() throws InterruptedException {
-        while (isVmRunning) {
-            EventSet eventSet = vm.eventQueue().remove();
-            for (Event event : eventSet) {
-
-                if (event instanceof VMDisconnectEvent) {
-                    System.out.println("Fin de l'exécution réelle (VM Disconnected).");
-
-                    isVmRunning = false;
-                    printProcessOutput();
-                    break;
-                }
-
-                if (event instanceof ClassPrepareEvent) {
-                    ClassPrepareEvent evt = (ClassPrepareEvent) event;
-                    System.out.println("Classe chargée : " + evt.referenceType().name());
-                    createAutoStepRequest(evt.thread());
-                }
-
-                if (event instanceof StepEvent || event instanceof BreakpointEvent) {
-                    Location loc = ((LocatableEvent) event).location();
-                    ThreadReference thread = ((LocatableEvent) event).thread();
-                    recordSnapshot(loc, thread);
-                }
-            }
-
-            if (isVmRunning) {
-                vm.resume();
-            }
+    // Fin de session : le fichier de débordement ou le fichier de trace rouvert est libéré
+    private void closeTimeline() {
+        try {
+            state.getTimelineManager().close();
+        } catch (IOException e) {
+            System.err.println("Fermeture de la chronologie impossible : " + e.getMessage());
         }
     }
 
-    private void createAutoStepRequest(ThreadReference thread) {
-        StepRequest stepRequest = vm.eventRequestManager().createStepRequest(
-                thread, StepRequest.STEP_LINE, StepRequest.STEP_INTO);
-        stepRequest.addClassExclusionFilter("java.*");
-        stepRequest.addClassExclusionFilter("javax.*");
-        stepRequest.addClassExclusionFilter("sun.*");
-        stepRequest.addClassExclusionFilter("jdk.*");
-        stepRequest.setSuspendPolicy(EventRequest.SUSPEND_ALL);
-        stepRequest.enable();
+    // Enregistrement délégué au TraceRecorder, selon le mode choisi dans recordingOptions
+    private void recordTrace() throws InterruptedException {
+        recorder.record();
     }
 
-    private void recordSnapshot(Location location, ThreadReference thread) {
+    private void saveTrace() {
+        Path traceFile = recordingOptions.getTraceFile();
+        if (traceFile == null) return;
         try {
-            state.getTimelineManager().recordSnapshot(location, thread);
-        } catch (Exception e) {
-            System.err.println("Error recording snapshot: " + e.getMessage());
+            state.getTimelineManager().save(traceFile);
+            System.out.println("Trace écrite dans " + traceFile + " (" + traceFile.toFile().length() + " octets)");
+        } catch (IOException e) {
+            System.err.println("Écriture de la trace impossible : " + e.getMessage());
         }
     }
 
     private void inputLoop() {
-        Scanner sc = new Scanner(System.in);
-        System.out.println("\nCommandes : step, step-over, continue, print <var>, quit");
+        System.out.println("\nCommandes : step, step-over, step-out, step-back, step-over-back, continue, reverse-continue, print-var <var>, quit");
 
         while (true) {
             ExecutionSnapshot current = state.getTimelineManager().getCurrentSnapshot();
             String locationInfo = (current != null) ?
-                    "[" + current.getSnapshotId() + "] " + current.getMethodName() + ":" + current.getLineNumber()
+                    "[" + current.getSnapshotId() + "] " + threadPrefix(current)
+                            + current.getMethodName() + ":" + current.getLineNumber()
                     : "[?]";
 
             System.out.print("\nreplay " + locationInfo + "> ");
-            String input = sc.nextLine();
+            String line = input.nextLine();
 
-            if (input.equals("quit")) break;
-            if (input.trim().isEmpty()) continue;
+            if (line.equals("quit")) break;
+            if (line.trim().isEmpty()) continue;
 
             try {
-                Command command = interpreter.parse(input);
+                Command command = interpreter.parse(line);
                 CommandResult result = command.execute(state);
                 displayResult(result);
             } catch (Exception e) {
@@ -158,6 +238,13 @@ public class ScriptableDebugger {
         }
     }
 
+    // Nom du thread du snapshot, affiché seulement si plusieurs threads ont été enregistrés
+    private String threadPrefix(ExecutionSnapshot snapshot) {
+        TimelineManager tm = state.getTimelineManager();
+        if (tm.getThreadTimelines().size() <= 1) return "";
+        return tm.getThreadTimeline(snapshot.getThreadId()).getName() + " ";
+    }
+
     private void displayResult(CommandResult result) {
         if (!result.isSuccess()) {
             System.err.println(result.getMessage());
@@ -180,5 +267,26 @@ public class ScriptableDebugger {
         } catch (Exception e) { }
     }
 
+    private class RecordingProgress implements TraceRecorder.Listener {
+        @Override
+        public void classLoaded(String className) {
+            System.out.println("Classe chargée : " + className);
+        }
+
+        @Override
+        public void threadStarted(String threadName) {
+            System.out.println("Thread démarré : " + threadName);
+        }
 
-}
\ No newline at end of file
+        @Override
+        public void triggerFired(String trigger, int snapshotId) {
+            System.out.println("Déclencheur atteint : " + trigger + " (snapshot #" + snapshotId + ")");
+        }
+
+        @Override
+        public void vmDisconnected() {
+            System.out.println("Fin de l'exécution réelle (VM Disconnected).");
+            printProcessOutput();
+        }
+    }
+}
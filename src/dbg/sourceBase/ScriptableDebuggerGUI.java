@@ -10,6 +10,7 @@ import gui.DebuggerGUI;
 import timetravel.*;
 import javax.swing.*;
 import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
 
 public class ScriptableDebuggerGUI {
@@ -18,10 +19,18 @@ public class ScriptableDebuggerGUI {
     private DebuggerState state;
     private CommandInterpreter interpreter;
     private DebuggerGUI gui;
-    private boolean isVmRunning = true;
+    private RecordingOptions recordingOptions;
+    private TraceRecorder recorder;
+    // Session attachée à une VM déjà lancée : elle n'est jamais arrêtée par le débogueur, seulement quittée
+    private boolean attached;
 
     public ScriptableDebuggerGUI() {
         this.interpreter = new CommandInterpreter();
+        this.recordingOptions = new RecordingOptions();
+    }
+
+    public void setRecordingOptions(RecordingOptions recordingOptions) {
+        this.recordingOptions = recordingOptions;
     }
 
     // Lance la Machine Virtuelle (VM) et se connecte à la classe cible
@@ -51,20 +60,14 @@ public class ScriptableDebuggerGUI {
             vm = connectAndLaunchVM();
             captureProcessOutput();
             state = new DebuggerState(vm);
+            recorder = new TraceRecorder(vm, state.getTimelineManager(), recordingOptions,
+                    new RecordingProgress());
 
             SwingUtilities.invokeLater(() -> {
                 gui.setDebuggerState(state);
             });
 
-            state.getTimelineManager().setCallback(snapshot -> {
-                SwingUtilities.invokeLater(() -> {
-                    gui.appendOutput("\n=== Time-Travel to Snapshot #" +
-                            snapshot.getSnapshotId() + " ===\n");
-                    gui.appendOutput("Location: " + snapshot.getSourceFile() +
-                            ":" + snapshot.getLineNumber() + "\n");
-                    updateGUIFromSnapshot(snapshot);
-                });
-            });
+            setRestoreCallback();
 
             enableClassPrepareRequest(vm);
 
@@ -82,21 +85,134 @@ public class ScriptableDebuggerGUI {
         }
     }
 
+    // Session attachée à une VM déjà lancée : le bouton Start/Stop Recording ouvre et ferme la fenêtre
+    // d'enregistrement (--window en fixe la durée), puis la cible continue à pleine vitesse sans le débogueur
+    public void attachToRunning(AttachTarget target) {
+        this.attached = true;
+
+        SwingUtilities.invokeLater(() -> {
+            gui = new DebuggerGUI();
+            gui.setCallback(new DebuggerGUICallback());
+            gui.setVisible(true);
+            gui.appendOutput("=== Time-Traveling Debugger Started ===\n");
+            gui.appendOutput("Attaching to " + target + "...\n");
+            gui.enableControls(false);
+        });
+
+        try {
+            vm = target.attach();
+            state = new DebuggerState(vm);
+            recorder = new TraceRecorder(vm, state.getTimelineManager(), recordingOptions,
+                    new RecordingProgress());
+
+            SwingUtilities.invokeLater(() -> {
+                gui.setDebuggerState(state);
+            });
+
+            setRestoreCallback();
+
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("Attached to " + vm.name() + " " + vm.version() + "\n");
+                gui.appendOutput("Recording mode: " + recordingOptions + "\n");
+                gui.appendOutput("Press Start Recording to record a window of the running program\n");
+                gui.setRecordingControl(true, false);
+            });
+
+        } catch (Exception e) {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("ERROR: " + e.getMessage() + "\n");
+            });
+        }
+    }
+
+    // Fenêtre d'enregistrement d'une session attachée, sur son propre thread (hors de l'EDT)
+    private void recordWindow() {
+        SwingUtilities.invokeLater(() -> {
+            gui.appendOutput("\n=== Phase 1: Recording window ===\n");
+            gui.setRecordingControl(true, true);
+        });
+
+        try {
+            recorder.recordRunningThreads();
+            recordTrace();
+            try {
+                vm.dispose();
+            } catch (VMDisconnectedException e) {
+                // La cible s'est terminée pendant la fenêtre
+            }
+            SwingUtilities.invokeLater(() -> {
+                gui.setRecordingControl(false, false);
+                gui.appendOutput("Recording window closed, detached from target\n");
+            });
+            saveTrace();
+            startReplay();
+
+        } catch (Exception e) {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("ERROR: " + e.getMessage() + "\n");
+            });
+        }
+    }
+
+    // Rouvre un fichier de trace écrit par --save et passe directement en mode lecture, sans VM cible
+    public void openTrace(Path traceFile) {
+        SwingUtilities.invokeLater(() -> {
+            gui = new DebuggerGUI();
+            gui.setCallback(new DebuggerGUICallback());
+            gui.setVisible(true);
+            gui.appendOutput("=== Time-Traveling Debugger Started ===\n");
+            gui.appendOutput("Opening trace " + traceFile + "...\n");
+            gui.enableControls(false);
+        });
+
+        try {
+            state = new DebuggerState(null, TimelineManager.open(traceFile));
+
+            SwingUtilities.invokeLater(() -> {
+                gui.setDebuggerState(state);
+            });
+
+            setRestoreCallback();
+            startReplay();
+
+        } catch (Exception e) {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("ERROR: " + e.getMessage() + "\n");
+            });
+        }
+    }
+
+    private void setRestoreCallback() {
+        state.getTimelineManager().setCallback(snapshot -> {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("\n=== Time-Travel to Snapshot #" +
+                        snapshot.getSnapshotId() + " ===\n");
+                gui.appendOutput("Location: " + snapshot.getSourceFile() +
+                        ":" + snapshot.getLineNumber() + "\n");
+                updateGUIFromSnapshot(snapshot);
+            });
+        });
+    }
+
     // Configure la requête pour être notifié quand la classe cible est chargée
     public void enableClassPrepareRequest(VirtualMachine vm) {
-        ClassPrepareRequest r = vm.eventRequestManager().createClassPrepareRequest();
-        r.addClassFilter(debugClass.getName());
-        r.enable();
+        recorder.enableClassPrepareRequest(debugClass.getName());
     }
 
     // Démarre le processus de débogage : enregistrement d'abord, puis mode lecture
     public void startDebugger() throws InterruptedException, AbsentInformationException {
         SwingUtilities.invokeLater(() -> {
             gui.appendOutput("\n=== Phase 1: Recording ===\n");
+            gui.appendOutput("Recording mode: " + recordingOptions + "\n");
         });
 
         recordTrace();
+        saveTrace();
+        startReplay();
+    }
 
+    // Mode lecture sur la chronologie enregistrée ou relue d'un fichier de trace (recorder vaut alors null)
+    private void startReplay() {
         SwingUtilities.invokeLater(() -> {
             gui.appendOutput("\n=== Phase 2: Replay Mode ===\n");
             gui.appendOutput("Snapshots captured: " +
@@ -111,6 +227,21 @@ public class ScriptableDebuggerGUI {
             gui.appendOutput("- Variables tracked: " + varCount + "\n");
             gui.appendOutput("- Variable modifications: " + modifCount + "\n");
             gui.appendOutput("- Method calls: " + methodCallCount + "\n");
+            gui.appendOutput(String.format("- JDWP round trips per snapshot: %.2f%n",
+                    state.getTimelineManager().getJdwpRoundTripsPerSnapshot()));
+            if (recorder != null) {
+                gui.appendOutput("- JDI events: " + recorder.getEventCount() + "\n");
+                gui.appendOutput("- Max index backlog: " + recorder.getMaxIndexBacklog() + "\n");
+                if (recorder.getOptions().isArmed()) {
+                    gui.appendOutput("- Trigger: " + (recorder.getTriggerSnapshotId() >= 0
+                            ? recorder.getTriggerDescription() + " at snapshot #" + recorder.getTriggerSnapshotId()
+                            : "not reached, last " + recorder.getOptions().getPreTriggerSteps() + " steps kept") + "\n");
+                }
+            }
+            gui.appendOutput("- Dropped snapshots: " + state.getTimelineManager().getFirstSnapshotId() + "\n");
+            gui.appendOutput("- Spilled segments: " + state.getTimelineManager().getSpilledSegmentCount()
+                    + " (" + state.getTimelineManager().getSegmentSize() + " snapshots each)\n");
+            gui.appendOutput("- Threads: " + state.getTimelineManager().getThreadTimelines().size() + "\n");
             gui.appendOutput("\nReady to navigate.\n");
 
             gui.enableControls(true);
@@ -119,78 +250,27 @@ public class ScriptableDebuggerGUI {
         state.setExecutionStrategy(new ReplayExecutionStrategy());
 
         if (state.getTimelineManager().getTimelineSize() > 0) {
-            state.getTimelineManager().travelToSnapshot(0);
+            state.getTimelineManager().travelToSnapshot(state.getTimelineManager().getFirstSnapshotId());
         }
     }
 
-    // Boucle principale d'enregistrement : capture les événements et crée des snapshots
+    // Enregistrement délégué au TraceRecorder, selon le mode choisi dans recordingOptions
     private void recordTrace() throws InterruptedException {
-        int snapshotCount = 0;
-
-        while (isVmRunning) {
-            EventSet eventSet = vm.eventQueue().remove();
-
-            for (Event event : eventSet) {
-                if (event instanceof VMDisconnectEvent) {
-                    SwingUtilities.invokeLater(() -> {
-                        gui.appendOutput("VM Disconnected\n");
-                    });
-                    isVmRunning = false;
-                    break;
-                }
-
-                if (event instanceof ClassPrepareEvent) {
-                    ClassPrepareEvent evt = (ClassPrepareEvent) event;
-                    SwingUtilities.invokeLater(() -> {
-                        gui.appendOutput("Class loaded: " + evt.referenceType().name() + "\n");
-                    });
-                    createAutoStepRequest(evt.thread());
-                }
-
-                if (event instanceof StepEvent || event instanceof BreakpointEvent) {
-                    Location loc = ((LocatableEvent) event).location();
-                    ThreadReference thread = ((LocatableEvent) event).thread();
-
-                    ExecutionSnapshot snapshot = recordSnapshot(loc, thread);
-
-                    if (snapshot != null) {
-                        snapshotCount++;
-                        if (snapshotCount % 10 == 0) {
-                            int finalCount = snapshotCount;
-                            SwingUtilities.invokeLater(() -> {
-                                gui.appendOutput("Captured " + finalCount + " snapshots\n");
-                            });
-                        }
-                    }
-                }
-            }
-
-            if (isVmRunning) {
-                vm.resume();
-            }
-        }
-    }
-
-    // Configure le pas-à-pas automatique (Step Into) pour suivre toute l'exécution
-    private void createAutoStepRequest(ThreadReference thread) {
-        StepRequest stepRequest = vm.eventRequestManager().createStepRequest(
-                thread, StepRequest.STEP_LINE, StepRequest.STEP_INTO);
-
-        stepRequest.addClassExclusionFilter("java.*");
-        stepRequest.addClassExclusionFilter("javax.*");
-        stepRequest.addClassExclusionFilter("sun.*");
-        stepRequest.addClassExclusionFilter("jdk.*");
-
-        stepRequest.setSuspendPolicy(EventRequest.SUSPEND_ALL);
-        stepRequest.enable();
+        recorder.record();
     }
 
-    // Enregistre un instantané de l'état actuel via le TimelineManager
-    private ExecutionSnapshot recordSnapshot(Location location, ThreadReference thread) {
+    private void saveTrace() {
+        Path traceFile = recordingOptions.getTraceFile();
+        if (traceFile == null) return;
         try {
-            return state.getTimelineManager().recordSnapshot(location, thread);
-        } catch (Exception e) {
-            return null;
+            state.getTimelineManager().save(traceFile);
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("Trace saved to " + traceFile + "\n");
+            });
+        } catch (IOException e) {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("ERROR: could not save trace: " + e.getMessage() + "\n");
+            });
         }
     }
 
@@ -243,6 +323,46 @@ public class ScriptableDebuggerGUI {
         }).start();
     }
 
+    // Progression de l'enregistrement affichée dans la console de l'interface
+    private class RecordingProgress implements TraceRecorder.Listener {
+        @Override
+        public void classLoaded(String className) {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("Class loaded: " + className + "\n");
+            });
+        }
+
+        @Override
+        public void threadStarted(String threadName) {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("Thread started: " + threadName + "\n");
+            });
+        }
+
+        @Override
+        public void snapshotRecorded(ExecutionSnapshot snapshot, int snapshotCount) {
+            if (snapshotCount % 10 == 0) {
+                SwingUtilities.invokeLater(() -> {
+                    gui.appendOutput("Captured " + snapshotCount + " snapshots\n");
+                });
+            }
+        }
+
+        @Override
+        public void triggerFired(String trigger, int snapshotId) {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("Trigger reached: " + trigger + " at snapshot #" + snapshotId + "\n");
+            });
+        }
+
+        @Override
+        public void vmDisconnected() {
+            SwingUtilities.invokeLater(() -> {
+                gui.appendOutput("VM Disconnected\n");
+            });
+        }
+    }
+
     private class DebuggerGUICallback implements DebuggerGUI.DebuggerCallback {
 
         @Override
@@ -296,17 +416,41 @@ public class ScriptableDebuggerGUI {
             }
         }
 
+        @Override
+        public void startRecording() {
+            new Thread(ScriptableDebuggerGUI.this::recordWindow, "timetravel-recorder").start();
+        }
+
+        @Override
+        public void stopRecording() {
+            recorder.stop();
+        }
+
         @Override
         public void stop() {
-            isVmRunning = false;
+            if (recorder != null) {
+                recorder.stop();
+            }
 
             if (vm != null) {
                 try {
-                    vm.exit(0);
+                    if (attached) {
+                        vm.dispose();
+                    } else {
+                        vm.exit(0);
+                    }
                 } catch (Exception e) {
                 }
             }
 
+            // Libère le fichier de débordement ou le fichier de trace rouvert
+            if (state != null) {
+                try {
+                    state.getTimelineManager().close();
+                } catch (IOException e) {
+                }
+            }
+
             SwingUtilities.invokeLater(() -> {
                 gui.appendOutput("\n=== Debugger Stopped ===\n");
             });
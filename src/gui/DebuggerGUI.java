@@ -22,8 +22,20 @@ public class DebuggerGUI extends JFrame {
     private JTextArea programOutputArea;
     private JButton stepOverButton;
     private JButton stepIntoButton;
+    private JButton stepOutButton;
+    private JButton stepBackButton;
+    private JButton stepOverBackButton;
     private JButton continueButton;
+    private JButton reverseContinueButton;
     private JButton stopButton;
+    // Session attachée : ouvre puis ferme la fenêtre d'enregistrement, masqué sinon
+    private JButton recordButton;
+    private boolean recordingWindowOpen = false;
+    private JSlider timelineSlider;
+    private JLabel snapshotLabel;
+    private boolean updatingTimelineSlider = false;
+    // Longueur du journal de sortie actuellement affichée, -1 si le contenu n'en est pas un préfixe connu
+    private int displayedOutputOffset = -1;
     private JPanel ttqPanel;
     private DefaultListModel<String> variableHistoryModel;
     private JList<String> variableHistoryList;
@@ -50,6 +62,8 @@ public class DebuggerGUI extends JFrame {
         CommandResult executeCommand(Command command);
         void placeBreakpoint(String file, int line);
         void stop();
+        default void startRecording() {}
+        default void stopRecording() {}
     }
 
     // Constructeur principal : initialise la fenêtre, la taille et les composants graphiques
@@ -58,6 +72,15 @@ public class DebuggerGUI extends JFrame {
         sourceLines = new HashMap<>();
         initComponents();
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Fermer la fenêtre termine la session comme le bouton Stop (VM cible, fichiers de la chronologie)
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (callback != null) {
+                    callback.stop();
+                }
+            }
+        });
         setSize(1400, 900);
         setLocationRelativeTo(null);
     }
@@ -107,17 +130,50 @@ public class DebuggerGUI extends JFrame {
         stepOverButton = new JButton("Step Over");
         stepOverButton.addActionListener(e -> executeStepOver());
 
+        stepOutButton = new JButton("Step Out");
+        stepOutButton.addActionListener(e -> executeStepOut());
+
+        stepBackButton = new JButton("Step Back");
+        stepBackButton.addActionListener(e -> executeStepBack());
+
+        stepOverBackButton = new JButton("Step Over Back");
+        stepOverBackButton.addActionListener(e -> executeStepOverBack());
+
         continueButton = new JButton("Continue");
         continueButton.addActionListener(e -> executeContinue());
 
+        reverseContinueButton = new JButton("Reverse Continue");
+        reverseContinueButton.addActionListener(e -> executeReverseContinue());
+
         stopButton = new JButton("Stop");
         stopButton.addActionListener(e -> executeStop());
         stopButton.setBackground(new Color(220, 100, 100));
 
+        recordButton = new JButton("Start Recording");
+        recordButton.addActionListener(e -> executeRecord());
+        recordButton.setVisible(false);
+
+        timelineSlider = new JSlider(0, 0, 0);
+        timelineSlider.setPreferredSize(new Dimension(200, 20));
+        timelineSlider.setEnabled(false);
+        timelineSlider.addChangeListener(e -> {
+            if (!updatingTimelineSlider && !timelineSlider.getValueIsAdjusting()) {
+                executeSeek(timelineSlider.getValue());
+            }
+        });
+        snapshotLabel = new JLabel("# - / -");
+
         panel.add(stepIntoButton);
         panel.add(stepOverButton);
+        panel.add(stepOutButton);
+        panel.add(stepBackButton);
+        panel.add(stepOverBackButton);
         panel.add(continueButton);
+        panel.add(reverseContinueButton);
         panel.add(stopButton);
+        panel.add(recordButton);
+        panel.add(timelineSlider);
+        panel.add(snapshotLabel);
         return panel;
     }
 
@@ -316,6 +372,14 @@ public class DebuggerGUI extends JFrame {
         programOutputArea.setEditable(false);
         programOutputArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
         programOutputArea.setBackground(Color.WHITE);
+        programOutputArea.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    timeTravelToOutputLine(programOutputArea.viewToModel2D(e.getPoint()));
+                }
+            }
+        });
         outputTabs.addTab("Program Output", new JScrollPane(programOutputArea));
 
         outputArea = new JTextArea();
@@ -342,12 +406,54 @@ public class DebuggerGUI extends JFrame {
         }
     }
 
+    private void executeStepOut() {
+        if (callback != null) {
+            callback.executeCommand(new StepOutCommand());
+        }
+    }
+
+    private void executeStepBack() {
+        if (callback != null) {
+            callback.executeCommand(new StepBackCommand());
+        }
+    }
+
+    private void executeStepOverBack() {
+        if (callback != null) {
+            callback.executeCommand(new StepOverBackCommand());
+        }
+    }
+
     private void executeContinue() {
         if (callback != null) {
             callback.executeCommand(new ContinueCommand());
         }
     }
 
+    private void executeReverseContinue() {
+        if (callback != null) {
+            callback.executeCommand(new ReverseContinueCommand());
+        }
+    }
+
+    // Déplace le curseur de replay directement sur le snapshot choisi avec le curseur de la timeline
+    private void executeSeek(int snapshotId) {
+        if (callback != null) {
+            callback.executeCommand(new TimeTravelCommand(snapshotId));
+        }
+    }
+
+    private void executeRecord() {
+        if (callback == null) return;
+        if (recordingWindowOpen) {
+            recordButton.setEnabled(false);
+            callback.stopRecording();
+        } else {
+            recordButton.setEnabled(false);
+            callback.startRecording();
+        }
+    }
+
     private void executeStop() {
         if (callback != null) {
             callback.stop();
@@ -377,7 +483,7 @@ public class DebuggerGUI extends JFrame {
     // Met à jour la liste des modifications de la variable suivie
     private void updateVariableHistory() {
         variableHistoryModel.clear();
-        currentVariableHistory.clear();
+        currentVariableHistory = new ArrayList<>();
 
         if (trackedVariable == null) return;
 
@@ -421,7 +527,7 @@ public class DebuggerGUI extends JFrame {
         trackedVariable = null;
         currentVariableLabel.setText("No variable tracked");
         variableHistoryModel.clear();
-        currentVariableHistory.clear();
+        currentVariableHistory = new ArrayList<>();
     }
 
     private void refreshMethodCallsDisplay() {
@@ -450,16 +556,28 @@ public class DebuggerGUI extends JFrame {
         for (TimelineManager.MethodCallRecord call : calls) {
             currentMethodCalls.add(new MethodCallInfo(
                     call.getSnapshotId(), call.getMethodName(),
-                    call.getLineNumber(), call.getSourceFile()));
+                    call.getLineNumber(), call.getSourceFile(),
+                    formatArguments(call), call.getReturnValue()));
         }
 
         for (int i = 0; i < currentMethodCalls.size(); i++) {
             MethodCallInfo info = currentMethodCalls.get(i);
-            methodCallsModel.addElement(String.format("[%d] %s() at %s:%d",
-                    i, info.methodName, info.sourceFile, info.lineNumber));
+            methodCallsModel.addElement(String.format("[%d] %s(%s) at %s:%d%s",
+                    i, info.methodName, info.arguments, info.sourceFile, info.lineNumber,
+                    info.returnValue != null ? " -> " + info.returnValue : ""));
         }
     }
 
+    // "a=1, b=2" à partir des paramètres relevés à l'entrée de l'appel
+    private String formatArguments(TimelineManager.MethodCallRecord call) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> argument : call.getArguments().entrySet()) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(argument.getKey()).append('=').append(argument.getValue());
+        }
+        return sb.toString();
+    }
+
     private void findAllMethodCalls() {
         findAllMethodCallsInternal(true);
     }
@@ -502,13 +620,15 @@ public class DebuggerGUI extends JFrame {
         for (TimelineManager.MethodCallRecord call : calls) {
             currentMethodCalls.add(new MethodCallInfo(
                     call.getSnapshotId(), call.getMethodName(),
-                    call.getLineNumber(), call.getSourceFile()));
+                    call.getLineNumber(), call.getSourceFile(),
+                    formatArguments(call), call.getReturnValue()));
         }
 
         for (int i = 0; i < currentMethodCalls.size(); i++) {
             MethodCallInfo info = currentMethodCalls.get(i);
-            methodCallsModel.addElement(String.format("[%d] %s() at %s:%d",
-                    i, info.methodName, info.sourceFile, info.lineNumber));
+            methodCallsModel.addElement(String.format("[%d] %s(%s) at %s:%d%s",
+                    i, info.methodName, info.arguments, info.sourceFile, info.lineNumber,
+                    info.returnValue != null ? " -> " + info.returnValue : ""));
         }
     }
 
@@ -535,7 +655,7 @@ public class DebuggerGUI extends JFrame {
         if (state == null) return;
 
         variableHistoryModel.clear();
-        currentVariableHistory.clear();
+        currentVariableHistory = new ArrayList<>();
         trackedVariable = null;
         currentVariableLabel.setText("All Variables with Modifications");
 
@@ -572,12 +692,17 @@ public class DebuggerGUI extends JFrame {
         String methodName;
         int lineNumber;
         String sourceFile;
+        String arguments;
+        String returnValue;
 
-        MethodCallInfo(int snapshotId, String methodName, int lineNumber, String sourceFile) {
+        MethodCallInfo(int snapshotId, String methodName, int lineNumber, String sourceFile,
+                       String arguments, String returnValue) {
             this.snapshotId = snapshotId;
             this.methodName = methodName;
             this.lineNumber = lineNumber;
             this.sourceFile = sourceFile;
+            this.arguments = arguments;
+            this.returnValue = returnValue;
         }
     }
 
@@ -703,17 +828,25 @@ public class DebuggerGUI extends JFrame {
             try {
                 if (value instanceof ArrayReference) {
                     ArrayReference array = (ArrayReference) value;
-                    for (int i = 0; i < Math.min(array.length(), 50); i++) {
-                        node.add(createVariableNode("[" + i + "]", array.getValue(i), depth + 1));
+                    List<Value> elements = array.getValues(0, Math.min(array.length(), 50));
+                    for (int i = 0; i < elements.size(); i++) {
+                        node.add(createVariableNode("[" + i + "]", elements.get(i), depth + 1));
                     }
                     if (array.length() > 50) {
                         node.add(new DefaultMutableTreeNode("..."));
                     }
                 } else {
-                    for (Field field : obj.referenceType().allFields()) {
-                        try {
-                            node.add(createVariableNode(field.name(), obj.getValue(field), depth + 1));
-                        } catch (Exception e) {
+                    List<Field> fields = obj.referenceType().allFields();
+                    Map<Field, Value> values;
+                    try {
+                        values = obj.getValues(fields);
+                    } catch (Exception e) {
+                        values = Collections.emptyMap();
+                    }
+                    for (Field field : fields) {
+                        if (values.containsKey(field)) {
+                            node.add(createVariableNode(field.name(), values.get(field), depth + 1));
+                        } else {
                             node.add(new DefaultMutableTreeNode(field.name() + " = <inaccessible>"));
                         }
                     }
@@ -768,14 +901,44 @@ public class DebuggerGUI extends JFrame {
         this.state = state;
     }
 
+    // Bouton de la fenêtre d'enregistrement d'une session attachée : visible tant que la fenêtre n'est pas fermée
+    public void setRecordingControl(boolean visible, boolean windowOpen) {
+        recordingWindowOpen = windowOpen;
+        recordButton.setVisible(visible);
+        recordButton.setEnabled(visible);
+        recordButton.setText(windowOpen ? "Stop Recording" : "Start Recording");
+    }
+
     public void enableControls(boolean enabled) {
         stepIntoButton.setEnabled(enabled);
         stepOverButton.setEnabled(enabled);
+        stepOutButton.setEnabled(enabled);
+        stepBackButton.setEnabled(enabled);
+        stepOverBackButton.setEnabled(enabled);
         continueButton.setEnabled(enabled);
+        reverseContinueButton.setEnabled(enabled);
+        timelineSlider.setEnabled(enabled);
+
+        if (enabled && state != null) {
+            updatingTimelineSlider = true;
+            timelineSlider.setMinimum(state.getTimelineManager().getFirstSnapshotId());
+            timelineSlider.setMaximum(Math.max(0, state.getTimelineManager().getTimelineSize() - 1));
+            updatingTimelineSlider = false;
+        }
+    }
+
+    private void syncTimelineSlider(int snapshotId) {
+        updatingTimelineSlider = true;
+        timelineSlider.setValue(snapshotId);
+        updatingTimelineSlider = false;
+
+        int total = state != null ? state.getTimelineManager().getTimelineSize() : 0;
+        snapshotLabel.setText("# " + snapshotId + " / " + Math.max(0, total - 1));
     }
 
     public void appendProgramOutput(String text) {
         SwingUtilities.invokeLater(() -> {
+            displayedOutputOffset = -1;
             programOutputArea.append(text);
             programOutputArea.setCaretPosition(programOutputArea.getDocument().getLength());
         });
@@ -793,6 +956,7 @@ public class DebuggerGUI extends JFrame {
             updateCallStackFromSnapshot(snapshot);
             updateInspectorFromSnapshot(snapshot);
             updateProgramOutputFromSnapshot(snapshot);
+            syncTimelineSlider(snapshot.getSnapshotId());
 
             if (trackedVariable != null) {
                 updateVariableHistory();
@@ -862,9 +1026,36 @@ public class DebuggerGUI extends JFrame {
         expandTree(inspectorTree, 2);
     }
 
+    // Remonte au snapshot qui a écrit la ligne de sortie contenant cet offset
+    private void timeTravelToOutputLine(int offset) {
+        if (state == null || state.getTimelineManager() == null || displayedOutputOffset < 0) return;
+
+        try {
+            // La zone de texte commence au premier caractère encore disponible dans le journal
+            OutputLog log = state.getTimelineManager().getOutputLog();
+            int lineStart = programOutputArea.getLineStartOffset(programOutputArea.getLineOfOffset(offset));
+            int snapshotId = log.snapshotAt(log.firstOffset() + lineStart);
+            if (snapshotId >= 0) {
+                executeSeek(snapshotId);
+            }
+        } catch (Exception e) {
+        }
+    }
+
+    // Le journal étant en ajout seulement, on ne transfère que l'écart avec le préfixe déjà affiché
     private void updateProgramOutputFromSnapshot(ExecutionSnapshot snapshot) {
-        programOutputArea.setText("");
-        programOutputArea.append(snapshot.getProgramOutputSoFar());
+        OutputLog log = state.getTimelineManager().getOutputLog();
+        int offset = snapshot.getOutputOffset();
+
+        if (displayedOutputOffset < 0) {
+            programOutputArea.setText(log.prefix(offset));
+        } else if (offset > displayedOutputOffset) {
+            programOutputArea.append(log.substring(displayedOutputOffset, offset));
+        } else if (offset < displayedOutputOffset) {
+            programOutputArea.replaceRange("", Math.max(0, offset - log.firstOffset()),
+                    Math.max(0, displayedOutputOffset - log.firstOffset()));
+        }
+        displayedOutputOffset = offset;
         programOutputArea.setCaretPosition(programOutputArea.getDocument().getLength());
     }
 }
\ No newline at end of file
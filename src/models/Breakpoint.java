@@ -11,10 +11,7 @@ public class Breakpoint {
     private int targetCount;
 
     public Breakpoint(String fileName, int lineNumber) {
-        this.fileName = fileName;
-        this.lineNumber = lineNumber;
-        this.hitCount = 0;
-        this.targetCount = 0;
+        this(fileName, lineNumber, null, BreakpointType.NORMAL, 0);
     }
 
     public enum BreakpointType {
@@ -58,6 +55,16 @@ public class Breakpoint {
         }
     }
 
+    // Premier passage (numéroté à partir de 0) sur lequel le breakpoint s'arrête
+    public int getFirstStoppingHit() {
+        return type == BreakpointType.ON_COUNT ? Math.max(targetCount - 1, 0) : 0;
+    }
+
+    // Dernier passage sur lequel le breakpoint s'arrête
+    public int getLastStoppingHit() {
+        return type == BreakpointType.ONCE ? 0 : Integer.MAX_VALUE;
+    }
+
     @Override
     public String toString() {
         String info = fileName + ":" + lineNumber;
@@ -3,6 +3,7 @@ package models;
 import com.sun.jdi.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class DebugFrame {
     private StackFrame frame;
@@ -20,9 +21,11 @@ public class DebugFrame {
 
     private void loadTemporaries() throws IncompatibleThreadStateException {
         try {
-            for (LocalVariable lv : frame.visibleVariables()) {
-                Value val = frame.getValue(lv);
-                temporaries.add(new Variable(lv.name(), lv.typeName(), val));
+            List<LocalVariable> visible = frame.visibleVariables();
+            if (visible.isEmpty()) return;
+            Map<LocalVariable, Value> values = frame.getValues(visible);
+            for (LocalVariable lv : visible) {
+                temporaries.add(new Variable(lv.name(), lv.typeName(), values.get(lv)));
             }
         } catch (AbsentInformationException e) {
         }
@@ -3,6 +3,7 @@ package models;
 import com.sun.jdi.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class MethodInfo {
     private Method method;
@@ -16,12 +17,11 @@ public class MethodInfo {
 
     private void loadArguments(StackFrame frame) throws IncompatibleThreadStateException {
         try {
-            List<LocalVariable> vars = method.variables();
-            for (LocalVariable lv : vars) {
-                if (lv.isArgument()) {
-                    Value val = frame.getValue(lv);
-                    arguments.add(new Variable(lv.name(), lv.typeName(), val));
-                }
+            List<LocalVariable> args = method.arguments();
+            if (args.isEmpty()) return;
+            Map<LocalVariable, Value> values = frame.getValues(args);
+            for (LocalVariable lv : args) {
+                arguments.add(new Variable(lv.name(), lv.typeName(), values.get(lv)));
             }
         } catch (AbsentInformationException e) {
         }
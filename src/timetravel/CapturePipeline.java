@@ -0,0 +1,71 @@
+package timetravel;
+
+import java.util.concurrent.*;
+
+/**
+ * File bornée entre le thread des événements JDI et un thread d'indexation.
+ * Le thread des événements ne fait que les lectures JDWP puis relâche la VM cible ;
+ * les tâches soumises (indexation des snapshots, notifications) s'exécutent ensuite dans l'ordre de soumission.
+ * Un seul consommateur : la chronologie exige des snapshots ajoutés dans l'ordre de leurs ids.
+ * Quand la file est pleine, submit bloque et la cible reste suspendue le temps que l'indexation rattrape.
+ */
+public class CapturePipeline {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Runnable STOP = () -> { };
+
+    private final BlockingQueue<Runnable> tasks;
+    private final Thread worker;
+    private volatile RuntimeException failure;
+    private int maxBacklog;
+
+    public CapturePipeline(int capacity) {
+        this.tasks = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::run, "timetravel-indexer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void submit(Runnable task) throws InterruptedException {
+        checkFailure();
+        tasks.put(task);
+        maxBacklog = Math.max(maxBacklog, tasks.size());
+    }
+
+    // Attend que toutes les tâches soumises soient exécutées, puis arrête le thread d'indexation
+    public void close() throws InterruptedException {
+        tasks.put(STOP);
+        worker.join();
+        checkFailure();
+    }
+
+    // Plus grand nombre de tâches en attente observé, pour dimensionner la file
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    // Après un échec, les tâches suivantes sont écartées mais la file continue d'être vidée :
+    // le thread des événements n'est jamais bloqué, et l'échec remonte au prochain submit ou à close
+    private void run() {
+        try {
+            while (true) {
+                Runnable task = tasks.take();
+                if (task == STOP) return;
+                if (failure != null) continue;
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Échec de l'indexation des snapshots", failure);
+        }
+    }
+}
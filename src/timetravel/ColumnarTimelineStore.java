@@ -0,0 +1,464 @@
+package timetravel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Chronologie stockée en colonnes de types primitifs, une entrée par snapshot (l'id est l'indice) :
+ * thread, ligne, méthode, fichier, profondeur, frame du sommet de pile, offset de sortie.
+ * Les variables sont gardées en deltas par frame : nom encodé par dictionnaire, valeur en tag + bits (ValueTable).
+ * La lecture renvoie des poignées ExecutionSnapshot qui ne décodent leurs variables qu'à la demande ;
+ * les dernières poignées lues (autour du curseur de replay) sont gardées dans un petit cache LRU.
+ * Les colonnes sont découpées en tranches de taille fixe (TimelineSegment). Avec un MemoryBudget, une tranche
+ * pleine est compactée et, tant que le budget est dépassé, les plus anciennes sont déversées dans un fichier
+ * (relues à la demande au replay) ou supprimées en mode flight recorder. Le budget est vérifié à chaque ajout,
+ * mais la mémoire se libère par tranche entière : la tranche en cours de remplissage peut dépasser le budget,
+ * d'où des tranches d'au plus un quart du budget (getSegmentSize). En flight recorder avec une limite en
+ * snapshots, seuls les N derniers restent lisibles, même si leur tranche garde encore les précédents en mémoire.
+ * Une chronologie relue depuis un fichier de trace (TraceFile) est en lecture seule : toutes ses tranches
+ * restent dans le fichier et sont relues de la même façon.
+ */
+public class ColumnarTimelineStore implements TimelineStore {
+    private static final byte REMOVED = ValueTable.UNSET;
+    private static final int DECODED_CACHE_SIZE = 32;
+    private static final int DEFAULT_SEGMENT_SIZE = 4096;
+    private static final int MIN_SEGMENT_SIZE = 16;
+    // Taille moyenne estimée d'un snapshot en colonnes (voir TimelineSegment.residentBytes), pour un budget en octets
+    private static final int ESTIMATED_SNAPSHOT_BYTES = 64;
+    // Tranches déversées relues pour le replay et gardées en mémoire en plus du budget
+    private static final int PAGED_IN_SEGMENTS = 2;
+
+    private final ShadowCallStack frames;
+    private final OutputLog outputLog;
+    private final StringDictionary fileNames;
+    private final StringDictionary variableNames;
+    private final ValueTable values;
+    private MemoryBudget budget;
+    private final int segmentSize;
+
+    private int size;
+    // Les snapshots d'id inférieur ont été supprimés (flight recorder)
+    private int firstSnapshotId;
+    // Tranche d'indice id / segmentSize ; null si elle est sur disque ou supprimée
+    private final List<TimelineSegment> segments;
+    // Tranches en mémoire, de la plus ancienne à la plus récente (la dernière reçoit les ajouts)
+    private final Deque<Integer> residentSegments;
+    private long residentBytes;
+    private int residentSnapshots;
+
+    private SegmentSpillFile spillFile;
+    // Emplacement des tranches qui ne sont plus en mémoire : spillFile, ou le fichier de trace relu
+    private SegmentSource source;
+    private final boolean readOnly;
+    private long[] spillPositions;
+    private int[] spillLengths;
+    private int spilledSegments;
+    private final Map<Integer, TimelineSegment> pagedIn;
+
+    private final Map<Integer, ExecutionSnapshot> decodedCache;
+
+    public ColumnarTimelineStore(ShadowCallStack frames, OutputLog outputLog, ValueTable values) {
+        this(frames, outputLog, values, MemoryBudget.UNLIMITED);
+    }
+
+    public ColumnarTimelineStore(ShadowCallStack frames, OutputLog outputLog, ValueTable values, MemoryBudget budget) {
+        this.frames = frames;
+        this.outputLog = outputLog;
+        this.fileNames = new StringDictionary();
+        this.variableNames = new StringDictionary();
+        this.values = values;
+        this.budget = budget;
+        this.readOnly = false;
+        this.segmentSize = segmentSizeFor(budget);
+        this.segments = new ArrayList<>();
+        this.residentSegments = new ArrayDeque<>();
+        this.spillPositions = new long[16];
+        this.spillLengths = new int[16];
+        this.pagedIn = new LinkedHashMap<Integer, TimelineSegment>(PAGED_IN_SEGMENTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, TimelineSegment> eldest) {
+                return size() > PAGED_IN_SEGMENTS;
+            }
+        };
+        this.decodedCache = new LinkedHashMap<Integer, ExecutionSnapshot>(DECODED_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ExecutionSnapshot> eldest) {
+                return size() > DECODED_CACHE_SIZE;
+            }
+        };
+    }
+
+    // Chronologie d'un fichier de trace : segmentCount tranches à partir de celle de firstSnapshotId, toutes dans source
+    private ColumnarTimelineStore(ShadowCallStack frames, OutputLog outputLog, ValueTable values,
+                                  StringDictionary fileNames, StringDictionary variableNames, int segmentSize,
+                                  int firstSnapshotId, int size, SegmentSource source) {
+        this.frames = frames;
+        this.outputLog = outputLog;
+        this.fileNames = fileNames;
+        this.variableNames = variableNames;
+        this.values = values;
+        this.budget = MemoryBudget.UNLIMITED;
+        this.readOnly = true;
+        this.segmentSize = segmentSize;
+        this.firstSnapshotId = firstSnapshotId;
+        this.size = size;
+        this.source = source;
+        int segmentCount = (size + segmentSize - 1) / segmentSize;
+        this.segments = new ArrayList<>(Collections.nCopies(segmentCount, (TimelineSegment) null));
+        this.residentSegments = new ArrayDeque<>();
+        this.spillPositions = new long[segmentCount];
+        this.spillLengths = new int[segmentCount];
+        this.pagedIn = new LinkedHashMap<Integer, TimelineSegment>(PAGED_IN_SEGMENTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, TimelineSegment> eldest) {
+                return size() > PAGED_IN_SEGMENTS;
+            }
+        };
+        this.decodedCache = new LinkedHashMap<Integer, ExecutionSnapshot>(DECODED_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ExecutionSnapshot> eldest) {
+                return size() > DECODED_CACHE_SIZE;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void append(ExecutionSnapshot snapshot) {
+        if (readOnly) {
+            throw new IllegalStateException("Chronologie relue depuis un fichier de trace : lecture seule");
+        }
+        int id = size;
+        TimelineSegment segment = segmentForAppend(id);
+        long before = segment.residentBytes();
+
+        // Une base dans une tranche précédente est remplacée par un keyframe : chaque tranche reste autonome
+        ExecutionSnapshot base = snapshot.getDeltaBase();
+        VariableDelta delta = snapshot.getVariableDelta();
+        if (base != null && base.getSnapshotId() < segment.getFirstId()) {
+            base = null;
+            delta = VariableDelta.keyframe(snapshot.getVariableValues());
+        }
+        segment.add(snapshot.getThreadId(), snapshot.getTimestamp(), snapshot.getLineNumber(),
+                snapshot.getMethodId(), fileNames.idOf(snapshot.getSourceFile()), snapshot.getStackDepth(),
+                snapshot.getCallStackTop().getId(), snapshot.getOutputOffset(),
+                base != null ? base.getSnapshotId() : -1);
+        for (int i = 0; i < delta.removedCount(); i++) {
+            segment.addEntry(variableNames.idOf(delta.removedName(i)), REMOVED, 0);
+        }
+        for (int i = 0; i < delta.changedCount(); i++) {
+            segment.addEntry(variableNames.idOf(delta.changedName(i)), delta.changedTag(i), delta.changedBits(i));
+        }
+        size++;
+        residentSnapshots++;
+        residentBytes += segment.residentBytes() - before;
+
+        if (segment.size() == segmentSize) {
+            residentBytes -= segment.residentBytes();
+            segment.compact();
+            residentBytes += segment.residentBytes();
+        }
+        enforceBudget();
+    }
+
+    // Au moins quatre tranches dans le budget : le dépassement dû à la tranche en cours reste sous un quart du budget
+    private static int segmentSizeFor(MemoryBudget budget) {
+        long snapshots = budget.getMaxSnapshots() > 0 ? budget.getMaxSnapshots()
+                : budget.getMaxBytes() > 0 ? budget.getMaxBytes() / ESTIMATED_SNAPSHOT_BYTES : 0;
+        return snapshots > 0
+                ? (int) Math.max(MIN_SEGMENT_SIZE, Math.min(DEFAULT_SEGMENT_SIZE, snapshots / 4))
+                : DEFAULT_SEGMENT_SIZE;
+    }
+
+    @Override
+    public synchronized ExecutionSnapshot get(int snapshotId) {
+        TimelineSegment segment = segment(snapshotId);
+        ExecutionSnapshot snapshot = decodedCache.get(snapshotId);
+        if (snapshot == null) {
+            snapshot = new ExecutionSnapshot(this, snapshotId, segment.getThreadId(snapshotId),
+                    segment.getTimestamp(snapshotId), segment.getLineNumber(snapshotId),
+                    fileNames.get(segment.getFileId(snapshotId)), frames.getNode(segment.getFrameId(snapshotId)),
+                    outputLog, segment.getOutputOffset(snapshotId), values);
+            decodedCache.put(snapshotId, snapshot);
+        }
+        return snapshot;
+    }
+
+    public synchronized boolean isKeyframe(int snapshotId) {
+        return segment(snapshotId).getVariableBase(snapshotId) < 0;
+    }
+
+    // Rejoue les deltas depuis le keyframe de la chaîne (au plus KeyframePolicy.MAX_INTERVAL, dans la même tranche),
+    // ou depuis un snapshot de la chaîne déjà décodé dans le cache (cas d'un pas vers un voisin)
+    synchronized VariableValues decodeVariables(int snapshotId) {
+        TimelineSegment segment = segment(snapshotId);
+        int[] chain = new int[KeyframePolicy.MAX_INTERVAL + 1];
+        int length = 0;
+        VariableValues variables = null;
+        for (int id = snapshotId; id >= 0; id = segment.getVariableBase(id)) {
+            ExecutionSnapshot decoded = id != snapshotId ? decodedCache.get(id) : null;
+            if (decoded != null && decoded.hasDecodedVariables()) {
+                variables = decoded.getVariableValues().copy();
+                break;
+            }
+            if (length == chain.length) {
+                chain = Arrays.copyOf(chain, length * 2);
+            }
+            chain[length++] = id;
+        }
+
+        if (variables == null) {
+            variables = new VariableValues();
+        }
+        for (int c = length - 1; c >= 0; c--) {
+            int id = chain[c];
+            for (int e = segment.entriesStart(id); e < segment.entriesEnd(id); e++) {
+                String name = variableNames.get(segment.entryName(e));
+                if (segment.entryTag(e) == REMOVED) {
+                    variables.remove(name);
+                } else {
+                    variables.put(name, segment.entryTag(e), segment.entryBits(e));
+                }
+            }
+        }
+        return variables;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized int firstSnapshotId() {
+        return firstSnapshotId;
+    }
+
+    @Override
+    public synchronized int getLineNumber(int snapshotId) {
+        return segment(snapshotId).getLineNumber(snapshotId);
+    }
+
+    @Override
+    public synchronized int getMethodId(int snapshotId) {
+        return segment(snapshotId).getMethodId(snapshotId);
+    }
+
+    @Override
+    public synchronized int getStackDepth(int snapshotId) {
+        return segment(snapshotId).getStackDepth(snapshotId);
+    }
+
+    @Override
+    public synchronized int getOutputOffset(int snapshotId) {
+        return segment(snapshotId).getOutputOffset(snapshotId);
+    }
+
+    @Override
+    public synchronized int getThreadId(int snapshotId) {
+        return segment(snapshotId).getThreadId(snapshotId);
+    }
+
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+
+    // Granularité du budget : nombre de snapshots d'une tranche, déversée ou supprimée d'un seul bloc
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    // Chronologie relue depuis un fichier de trace
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int getSpilledSegmentCount() {
+        return spilledSegments;
+    }
+
+    public synchronized long getSpilledBytes() {
+        return spillFile != null ? spillFile.length() : 0;
+    }
+
+    // Fin de session : le fichier de débordement est supprimé, le fichier de trace relu est fermé ;
+    // seules les tranches encore en mémoire restent lisibles
+    @Override
+    public synchronized void close() throws IOException {
+        pagedIn.clear();
+        if (source != null) {
+            source.close();
+        }
+    }
+
+    private TimelineSegment segmentForAppend(int id) {
+        int index = id / segmentSize;
+        if (index == segments.size()) {
+            TimelineSegment segment = new TimelineSegment(id, Math.min(segmentSize, 256));
+            segments.add(segment);
+            residentSegments.addLast(index);
+            residentBytes += segment.residentBytes();
+        }
+        return segments.get(index);
+    }
+
+    // Tranche contenant le snapshot, relue depuis le fichier si elle a été déversée
+    private TimelineSegment segment(int snapshotId) {
+        checkId(snapshotId);
+        int index = snapshotId / segmentSize;
+        TimelineSegment segment = segments.get(index);
+        if (segment != null) {
+            return segment;
+        }
+        segment = pagedIn.get(index);
+        if (segment == null) {
+            try {
+                segment = source.read(spillPositions[index], spillLengths[index]);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Lecture de la tranche " + index + " impossible", e);
+            }
+            pagedIn.put(index, segment);
+        }
+        return segment;
+    }
+
+    // Vérifié à chaque ajout ; la tranche en cours de remplissage reste toujours en mémoire.
+    // En DROP, une tranche n'est supprimée que si les suivantes atteignent encore le budget : les N derniers pas restent ;
+    // avec une limite en snapshots, les plus anciens de la tranche la plus ancienne ne sont plus lisibles
+    private void enforceBudget() {
+        if (budget.getOverflow() == MemoryBudget.Overflow.DROP && budget.getMaxSnapshots() > 0
+                && size - budget.getMaxSnapshots() > firstSnapshotId) {
+            firstSnapshotId = size - budget.getMaxSnapshots();
+            decodedCache.keySet().removeIf(id -> id < firstSnapshotId);
+            releaseBefore(firstSnapshotId);
+        }
+        while (residentSegments.size() > 1 && budget.isExceeded(residentBytes, residentSnapshots)) {
+            int index = residentSegments.peekFirst();
+            TimelineSegment segment = segments.get(index);
+            if (budget.getOverflow() == MemoryBudget.Overflow.DROP) {
+                if (!budget.isExceeded(residentBytes - segment.residentBytes(), residentSnapshots - segment.size())) {
+                    return;
+                }
+                drop(segment);
+            } else {
+                spill(index, segment);
+            }
+            residentSegments.pollFirst();
+            release(index, segment);
+        }
+    }
+
+    private void drop(TimelineSegment segment) {
+        firstSnapshotId = Math.max(firstSnapshotId, segment.getFirstId() + segment.size());
+        decodedCache.keySet().removeIf(id -> id < firstSnapshotId);
+    }
+
+    private void release(int index, TimelineSegment segment) {
+        segments.set(index, null);
+        residentBytes -= segment.residentBytes();
+        residentSnapshots -= segment.size();
+    }
+
+    // Fin de l'enregistrement armé : nouveau budget pour la suite (voir TimelineManager.commitTrigger)
+    synchronized void setBudget(MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    // Les snapshots avant snapshotId ne sont plus lisibles ; les tranches entièrement avant sont libérées
+    synchronized void discardBefore(int snapshotId) {
+        if (readOnly) {
+            throw new IllegalStateException("Chronologie relue depuis un fichier de trace : lecture seule");
+        }
+        int first = Math.min(snapshotId, size);
+        if (first <= firstSnapshotId) return;
+        releaseBefore(first);
+        firstSnapshotId = first;
+        decodedCache.keySet().removeIf(id -> id < firstSnapshotId);
+    }
+
+    // Libère les tranches en mémoire entièrement avant first ; la tranche en cours de remplissage reste en mémoire
+    private void releaseBefore(int first) {
+        Iterator<Integer> it = residentSegments.iterator();
+        while (it.hasNext()) {
+            int index = it.next();
+            TimelineSegment segment = segments.get(index);
+            if (segment.getFirstId() + segment.size() > first || !it.hasNext()) break;
+            it.remove();
+            release(index, segment);
+        }
+    }
+
+    private void spill(int index, TimelineSegment segment) {
+        try {
+            if (spillFile == null) {
+                spillFile = new SegmentSpillFile();
+                source = spillFile;
+            }
+            if (index >= spillPositions.length) {
+                spillPositions = Arrays.copyOf(spillPositions, Math.max(index + 1, spillPositions.length * 2));
+                spillLengths = Arrays.copyOf(spillLengths, spillPositions.length);
+            }
+            spillPositions[index] = spillFile.write(segment);
+            spillLengths[index] = segment.encodedSize();
+            spilledSegments++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Écriture de la tranche " + index + " impossible", e);
+        }
+    }
+
+    // Description des colonnes : taille des tranches, ids disponibles, dictionnaires et longueur de chaque tranche
+    synchronized void writeColumnsTo(DataOutputStream out) throws IOException {
+        out.writeInt(segmentSize);
+        out.writeInt(firstSnapshotId);
+        out.writeInt(size);
+        fileNames.writeTo(out);
+        variableNames.writeTo(out);
+        for (int index = firstSnapshotId / segmentSize; index < segments.size(); index++) {
+            TimelineSegment segment = segments.get(index);
+            out.writeInt(segment != null ? segment.encodedSize() : spillLengths[index]);
+        }
+    }
+
+    // Tranches à la suite, dans l'ordre et sous la forme binaire de TimelineSegment.writeTo
+    synchronized void writeSegmentsTo(DataOutputStream out) throws IOException {
+        for (int index = firstSnapshotId / segmentSize; index < segments.size(); index++) {
+            TimelineSegment segment = segments.get(index);
+            if (segment == null) {
+                segment = segment(index * segmentSize);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(segment.encodedSize());
+            segment.writeTo(buffer);
+            out.write(buffer.array());
+        }
+    }
+
+    // Les tranches restent dans source (à partir de la position 0) et ne sont lues qu'à la demande
+    static ColumnarTimelineStore readFrom(TraceSection columns, ShadowCallStack frames, OutputLog outputLog,
+                                          ValueTable values, SegmentSource source) {
+        int segmentSize = columns.getInt();
+        int firstSnapshotId = columns.getInt();
+        int size = columns.getInt();
+        StringDictionary fileNames = StringDictionary.readFrom(columns);
+        StringDictionary variableNames = StringDictionary.readFrom(columns);
+        ColumnarTimelineStore store = new ColumnarTimelineStore(frames, outputLog, values, fileNames, variableNames,
+                segmentSize, firstSnapshotId, size, source);
+        long position = 0;
+        for (int index = firstSnapshotId / segmentSize; index < store.segments.size(); index++) {
+            store.spillPositions[index] = position;
+            store.spillLengths[index] = columns.getInt();
+            position += store.spillLengths[index];
+        }
+        return store;
+    }
+
+    private void checkId(int snapshotId) {
+        if (snapshotId < firstSnapshotId || snapshotId >= size) {
+            throw new IndexOutOfBoundsException("Snapshot " + snapshotId + " hors de la chronologie ("
+                    + firstSnapshotId + ".." + size + ")");
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package timetravel;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Pointeurs de saut par profondeur de pile, maintenus pendant l'enregistrement.
+ * Pour chaque snapshot : le suivant et le précédent à une profondeur <= la sienne,
+ * et le premier snapshot suivant strictement moins profond (sortie de la méthode).
+ * Un index couvre les snapshots d'un seul thread : les ids, croissants, peuvent donc être espacés ;
+ * les tableaux sont indexés par pas (position dans le thread) et ids[pas] donne l'id global.
+ * Quand le début de la chronologie est supprimé (flight recorder), les premiers pas sont retirés :
+ * les tableaux commencent alors au pas firstStep, et un pointeur vers un pas retiré ne mène nulle part.
+ * Relu depuis un fichier de trace, l'index n'est pas reconstruit : les cinq colonnes (pointeurs compris)
+ * restent dans le fichier et y sont lues en place.
+ */
+public class DepthIndex {
+    private static final int NONE = -1;
+
+    private int[] ids;
+    private int[] depths;
+    private int[] nextAtOrAbove;
+    private int[] previousAtOrAbove;
+    private int[] exits;
+    // Pas enregistrés depuis le début ; seuls ceux à partir de firstStep restent dans les tableaux
+    private int size;
+    private int firstStep;
+
+    // Pas dont le suivant ou la sortie ne sont pas encore connus, profondeurs croissantes.
+    // Leur profondeur est gardée à part : un pas en attente peut avoir été retiré des tableaux
+    private int[] pending;
+    private int[] pendingDepths;
+    private int pendingSize;
+
+    // Index relu depuis un fichier de trace, null pendant l'enregistrement : position de chaque colonne
+    private final TraceSection section;
+    private long idsAt;
+    private long depthsAt;
+    private long nextAtOrAboveAt;
+    private long previousAtOrAboveAt;
+    private long exitsAt;
+
+    public DepthIndex() {
+        this.ids = new int[256];
+        this.depths = new int[256];
+        this.nextAtOrAbove = new int[256];
+        this.previousAtOrAbove = new int[256];
+        this.exits = new int[256];
+        this.pending = new int[64];
+        this.pendingDepths = new int[64];
+        this.section = null;
+    }
+
+    private DepthIndex(TraceSection section) {
+        this.section = section;
+        this.firstStep = section.getInt();
+        int count = section.getInt();
+        this.size = firstStep + count;
+        this.idsAt = section.position();
+        this.depthsAt = idsAt + 4L * count;
+        this.nextAtOrAboveAt = depthsAt + 4L * count;
+        this.previousAtOrAboveAt = nextAtOrAboveAt + 4L * count;
+        this.exitsAt = previousAtOrAboveAt + 4L * count;
+        section.skip(20L * count);
+    }
+
+    // Ajoute un snapshot (ids croissants) ; coût amorti O(1)
+    public void record(int snapshotId, int depth) {
+        checkWritable();
+        int step = size;
+        ensureCapacity(step - firstStep + 1);
+        int slot = step - firstStep;
+        ids[slot] = snapshotId;
+        depths[slot] = depth;
+        nextAtOrAbove[slot] = NONE;
+        exits[slot] = NONE;
+
+        while (pendingSize > 0 && pendingDepths[pendingSize - 1] > depth) {
+            int deeper = pending[--pendingSize];
+            if (deeper >= firstStep) {
+                exits[deeper - firstStep] = step;
+                if (nextAtOrAbove[deeper - firstStep] == NONE) {
+                    nextAtOrAbove[deeper - firstStep] = step;
+                }
+            }
+        }
+
+        int top = pendingSize > 0 ? pending[pendingSize - 1] : NONE;
+        if (top != NONE && pendingDepths[pendingSize - 1] == depth && top >= firstStep) {
+            nextAtOrAbove[top - firstStep] = step;
+        }
+        previousAtOrAbove[slot] = top;
+
+        if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, pendingSize * 2);
+            pendingDepths = Arrays.copyOf(pendingDepths, pendingSize * 2);
+        }
+        pending[pendingSize] = step;
+        pendingDepths[pendingSize] = depth;
+        pendingSize++;
+        size++;
+    }
+
+    // Step over : prochain snapshot à une profondeur <= celle de snapshotId, ou -1
+    public int nextAtOrAbove(int snapshotId) {
+        return idAt(pointer(nextAtOrAbove, nextAtOrAboveAt, snapshotId));
+    }
+
+    // Step over arrière : snapshot précédent à une profondeur <= celle de snapshotId, ou -1
+    public int previousAtOrAbove(int snapshotId) {
+        return idAt(pointer(previousAtOrAbove, previousAtOrAboveAt, snapshotId));
+    }
+
+    // Step out : premier snapshot suivant strictement moins profond, ou -1
+    public int exitOf(int snapshotId) {
+        return idAt(pointer(exits, exitsAt, snapshotId));
+    }
+
+    public int depthOf(int snapshotId) {
+        int step = stepOf(snapshotId);
+        return step >= 0 ? column(depths, depthsAt, step - firstStep) : NONE;
+    }
+
+    // Position du snapshot parmi ceux de l'index, -1 s'il n'en fait pas partie
+    public int stepOf(int snapshotId) {
+        if (snapshotId >= firstStep && snapshotId < size && column(ids, idsAt, snapshotId - firstStep) == snapshotId) {
+            return snapshotId;
+        }
+        int slot = searchIds(snapshotId);
+        return slot >= 0 ? firstStep + slot : NONE;
+    }
+
+    // Nombre de snapshots de l'index d'id < snapshotId (pas retirés compris)
+    public int countBefore(int snapshotId) {
+        int slot = searchIds(snapshotId);
+        return firstStep + (slot >= 0 ? slot : -slot - 1);
+    }
+
+    public int idAt(int step) {
+        return step >= firstStep && step < size ? column(ids, idsAt, step - firstStep) : NONE;
+    }
+
+    // Nombre de pas enregistrés, y compris ceux retirés
+    public int size() {
+        return size;
+    }
+
+    // Premier pas encore dans l'index
+    public int firstStep() {
+        return firstStep;
+    }
+
+    // Retire les pas dont l'id est inférieur à snapshotId ; les tableaux rétrécissent s'ils sont devenus trop grands
+    void discardBefore(int snapshotId) {
+        checkWritable();
+        int count = countBefore(snapshotId) - firstStep;
+        if (count <= 0) return;
+        int remaining = size - firstStep - count;
+        int capacity = depths.length > 256 && remaining < depths.length / 4
+                ? Math.max(256, remaining * 2) : depths.length;
+        ids = shift(ids, count, remaining, capacity);
+        depths = shift(depths, count, remaining, capacity);
+        nextAtOrAbove = shift(nextAtOrAbove, count, remaining, capacity);
+        previousAtOrAbove = shift(previousAtOrAbove, count, remaining, capacity);
+        exits = shift(exits, count, remaining, capacity);
+        firstStep += count;
+    }
+
+    // Les cinq colonnes l'une après l'autre, pointeurs compris : la relecture les lit en place sans rien recalculer
+    void writeTo(DataOutputStream out) throws IOException {
+        checkWritable();
+        int count = size - firstStep;
+        out.writeInt(firstStep);
+        out.writeInt(count);
+        for (int[] column : new int[][]{ids, depths, nextAtOrAbove, previousAtOrAbove, exits}) {
+            for (int slot = 0; slot < count; slot++) {
+                out.writeInt(column[slot]);
+            }
+        }
+    }
+
+    static DepthIndex readFrom(TraceSection section) {
+        return new DepthIndex(section);
+    }
+
+    private int pointer(int[] pointers, long pointersAt, int snapshotId) {
+        int step = stepOf(snapshotId);
+        return step >= 0 ? column(pointers, pointersAt, step - firstStep) : NONE;
+    }
+
+    // Valeur d'une colonne, dans le tableau ou dans le fichier de trace
+    private int column(int[] values, long valuesAt, int slot) {
+        return section != null ? section.getInt(valuesAt + 4L * slot) : values[slot];
+    }
+
+    private int searchIds(int snapshotId) {
+        return section != null
+                ? section.binarySearch(idsAt, 0, size - firstStep, snapshotId)
+                : Arrays.binarySearch(ids, 0, size - firstStep, snapshotId);
+    }
+
+    private void checkWritable() {
+        if (section != null) {
+            throw new IllegalStateException("Index relu depuis un fichier de trace : lecture seule");
+        }
+    }
+
+    private static int[] shift(int[] array, int count, int remaining, int capacity) {
+        if (capacity != array.length) {
+            return Arrays.copyOfRange(array, count, count + capacity);
+        }
+        System.arraycopy(array, count, array, 0, remaining);
+        return array;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= depths.length) return;
+        int newCapacity = Math.max(capacity, depths.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        depths = Arrays.copyOf(depths, newCapacity);
+        nextAtOrAbove = Arrays.copyOf(nextAtOrAbove, newCapacity);
+        previousAtOrAbove = Arrays.copyOf(previousAtOrAbove, newCapacity);
+        exits = Arrays.copyOf(exits, newCapacity);
+    }
+}
@@ -12,52 +12,152 @@ public class ExecutionSnapshot {
     private final int lineNumber;
     private final String sourceFile;
     private final String methodName;
-    private final Map<String, String> variables;
-    private final List<String> callStack;
+    private final String methodContext;
+    private final int methodId;
+    private VariableDelta variableDelta;
+    private final ValueTable values;
+    private ExecutionSnapshot deltaBase;
+    private final FrameNode callStack;
     private final ThreadReference thread;
-    private final String programOutputSoFar;
+    // Id dense du thread dans l'enregistrement (ordre d'apparition), voir ThreadTimeline
+    private final int threadId;
+    // Longueur de la sortie du programme au moment de la capture ; le texte reste dans le journal partagé
+    private final int outputOffset;
+    private final OutputLog outputLog;
+    // Requêtes JDWP émises pendant la capture (les métadonnées mises en cache par JDI ne comptent pas)
+    private int jdwpRoundTrips;
+    // Pour un snapshot relu depuis un ColumnarTimelineStore : variables décodées au premier accès
+    private final ColumnarTimelineStore store;
+    private VariableValues decodedVariables;
+    // Snapshot d'un MethodExitEvent : valeur renvoyée, transmise à l'arbre des appels lors de l'indexation
+    private byte returnTag = ValueTable.UNSET;
+    private long returnBits;
 
-    public ExecutionSnapshot(int id, Location loc, ThreadReference thread, String programOutput)
+    public ExecutionSnapshot(int id, Location loc, ThreadReference thread, int threadId, OutputLog outputLog,
+                             MethodMetadataCache metadataCache, ShadowCallStack shadowStack, ValueTable values)
             throws IncompatibleThreadStateException, AbsentInformationException {
+        MethodMetadataCache.MethodMetadata metadata = metadataCache.get(loc.method());
         this.snapshotId = id;
         this.timestamp = System.currentTimeMillis();
         this.location = loc;
         this.lineNumber = loc.lineNumber();
-        this.sourceFile = loc.sourceName();
-        this.methodName = loc.method().name();
+        this.sourceFile = metadata.getSourceName();
+        this.methodName = metadata.getMethodName();
+        this.methodContext = metadata.getContext();
+        this.methodId = metadata.getMethodId();
         this.thread = thread;
-        this.programOutputSoFar = programOutput != null ? programOutput : "";
-        this.variables = new HashMap<>();
-        captureVariables(thread);
-        this.callStack = new ArrayList<>();
-        captureCallStack(thread);
+        this.threadId = threadId;
+        this.values = values;
+        this.outputLog = outputLog;
+        this.outputOffset = outputLog.length();
+        this.store = null;
+        // Une seule lecture de la pile sert aux variables de la frame courante et à la pile d'appels
+        List<StackFrame> frames = thread.frames();
+        jdwpRoundTrips++;
+        this.variableDelta = VariableDelta.keyframe(captureVariables(frames.get(0), metadata));
+        this.callStack = shadowStack.update(frames, metadataCache);
     }
 
-    private void captureVariables(ThreadReference thread)
-            throws IncompatibleThreadStateException {
+    // Poignée légère sur un snapshot stocké en colonnes, sans miroirs JDI :
+    // les variables ne sont décodées qu'au premier appel à getVariables
+    ExecutionSnapshot(ColumnarTimelineStore store, int id, int threadId, long timestamp, int lineNumber, String sourceFile,
+                      FrameNode callStack, OutputLog outputLog, int outputOffset, ValueTable values) {
+        MethodMetadataCache.MethodMetadata metadata = callStack.getMethod();
+        this.snapshotId = id;
+        this.timestamp = timestamp;
+        this.location = null;
+        this.lineNumber = lineNumber;
+        this.sourceFile = sourceFile;
+        this.methodName = metadata.getMethodName();
+        this.methodContext = metadata.getContext();
+        this.methodId = metadata.getMethodId();
+        this.thread = null;
+        this.threadId = threadId;
+        this.values = values;
+        this.outputLog = outputLog;
+        this.outputOffset = outputOffset;
+        this.store = store;
+        this.callStack = callStack;
+    }
+
+    // Lit toutes les variables visibles en une seule requête StackFrame.getValues, sans les mettre en texte
+    private VariableValues captureVariables(StackFrame frame, MethodMetadataCache.MethodMetadata metadata) {
+        VariableValues variables = new VariableValues();
         try {
-            StackFrame frame = thread.frame(0);
-            for (LocalVariable var : frame.visibleVariables()) {
-                Value value = frame.getValue(var);
-                variables.put(var.name(), value != null ? value.toString() : "null");
+            List<LocalVariable> visible = metadata.visibleVariables(frame);
+            if (visible.isEmpty()) {
+                return variables;
+            }
+            Map<LocalVariable, Value> frameValues = frame.getValues(visible);
+            jdwpRoundTrips++;
+            for (LocalVariable var : visible) {
+                Value value = frameValues.get(var);
+                byte tag = ValueTable.tagOf(value);
+                if (values.isNew(value, tag)) {
+                    jdwpRoundTrips++;
+                }
+                variables.put(var.name(), tag, values.bitsOf(value, tag));
             }
         } catch (AbsentInformationException e) {
 
         }
+        return variables;
+    }
+
+    // Remplace le keyframe capturé par un delta vis-à-vis du snapshot précédent de la même frame
+    void encodeAsDelta(ExecutionSnapshot base, VariableDelta delta) {
+        this.variableDelta = delta;
+        this.deltaBase = base;
     }
 
-    private void captureCallStack(ThreadReference thread)
-            throws IncompatibleThreadStateException {
-        for (StackFrame frame : thread.frames()) {
-            try {
-                String frameName = frame.location().declaringType().name() +
-                        "." + frame.location().method().name() +
-                        "() ligne " + frame.location().lineNumber();
-                callStack.add(frameName);
-            } catch (Exception e) {
-                callStack.add("<unknown frame>");
+    VariableDelta getVariableDelta() {
+        return variableDelta;
+    }
+
+    // Snapshot sur lequel s'applique le delta de variables, null pour un keyframe
+    ExecutionSnapshot getDeltaBase() {
+        return deltaBase;
+    }
+
+    // Reconstruit la vue complète en rejouant les deltas depuis le dernier keyframe (à ne pas modifier)
+    VariableValues getVariableValues() {
+        if (store != null) {
+            if (decodedVariables == null) {
+                decodedVariables = store.decodeVariables(snapshotId);
             }
+            return decodedVariables;
+        }
+        Deque<VariableDelta> chain = new ArrayDeque<>();
+        for (ExecutionSnapshot s = this; s != null; s = s.deltaBase) {
+            chain.push(s.variableDelta);
         }
+        VariableValues variables = new VariableValues();
+        for (VariableDelta delta : chain) {
+            delta.applyTo(variables);
+        }
+        return variables;
+    }
+
+    void setReturnValue(byte tag, long bits) {
+        this.returnTag = tag;
+        this.returnBits = bits;
+    }
+
+    boolean hasReturnValue() { return returnTag != ValueTable.UNSET; }
+    byte getReturnTag() { return returnTag; }
+    long getReturnBits() { return returnBits; }
+
+    boolean hasDecodedVariables() {
+        return decodedVariables != null;
+    }
+
+    // Vue texte des variables, mise en forme seulement ici
+    public Map<String, String> getVariables() {
+        return getVariableValues().format(values);
+    }
+
+    public List<String> getCallStack() {
+        return callStack.toCallStack();
     }
 
 
@@ -67,14 +167,20 @@ public class ExecutionSnapshot {
     public int getLineNumber() { return lineNumber; }
     public String getSourceFile() { return sourceFile; }
     public String getMethodName() { return methodName; }
-    public Map<String, String> getVariables() { return variables; }
-    public List<String> getCallStack() { return callStack; }
+    public String getMethodContext() { return methodContext; }
+    public int getMethodId() { return methodId; }
+    public boolean isKeyframe() { return store != null ? store.isKeyframe(snapshotId) : deltaBase == null; }
+    public int getStackDepth() { return callStack.getDepth(); }
+    public FrameNode getCallStackTop() { return callStack; }
     public ThreadReference getThread() { return thread; }
-    public String getProgramOutputSoFar() { return programOutputSoFar; }
+    public int getThreadId() { return threadId; }
+    public int getOutputOffset() { return outputOffset; }
+    public String getProgramOutputSoFar() { return outputLog.prefix(outputOffset); }
+    public int getJdwpRoundTrips() { return jdwpRoundTrips; }
 
     @Override
     public String toString() {
         return String.format("Snapshot #%d: %s:%d in %s()",
                 snapshotId, sourceFile, lineNumber, methodName);
     }
-}
\ No newline at end of file
+}
@@ -2,11 +2,18 @@ package timetravel;
 
 
 import commands.*;
+import models.Breakpoint;
 
 public interface ExecutionStrategy {
     CommandResult step(DebuggerState state);
     CommandResult stepOver(DebuggerState state);
+    CommandResult stepOut(DebuggerState state);
+    CommandResult stepBack(DebuggerState state);
+    CommandResult stepOverBack(DebuggerState state);
     CommandResult continueRun(DebuggerState state);
+    CommandResult reverseContinue(DebuggerState state);
     CommandResult setBreakpoint(DebuggerState state, String fileName, int lineNumber);
+    CommandResult setBreakpoint(DebuggerState state, String fileName, int lineNumber,
+                                Breakpoint.BreakpointType type, int targetCount);
     CommandResult printVariable(DebuggerState state, String varName);
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package timetravel;
+
+import com.sun.jdi.Location;
+import java.util.*;
+
+/**
+ * Frame d'une pile d'appels enregistrée, reliée à la frame appelante.
+ * Les noeuds sont internés (un seul noeud par appelant, méthode et ligne) : deux piles qui ne
+ * diffèrent que par le sommet partagent toutes leurs frames inférieures, et un snapshot ne garde
+ * qu'une référence vers son sommet.
+ */
+public class FrameNode {
+    private final int id;
+    private final FrameNode parent;
+    private final MethodMetadataCache.MethodMetadata method;
+    private final int lineNumber;
+    private final int depth;
+    private List<FrameNode> children;
+    private String label;
+
+    private FrameNode(int id, FrameNode parent, MethodMetadataCache.MethodMetadata method, int lineNumber) {
+        this.id = id;
+        this.parent = parent;
+        this.method = method;
+        this.lineNumber = lineNumber;
+        this.depth = parent != null ? parent.depth + 1 : 0;
+    }
+
+    // Racine commune (pile vide) de toutes les piles d'un enregistrement
+    static FrameNode root() {
+        return new FrameNode(0, null, null, -1);
+    }
+
+    // Frame appelée depuis celle-ci, créée au premier passage (avec l'id newId) puis réutilisée
+    FrameNode child(MethodMetadataCache.MethodMetadata calledMethod, int calledLine, int newId) {
+        if (children == null) {
+            children = new ArrayList<>(2);
+        }
+        for (FrameNode child : children) {
+            if (child.method == calledMethod && child.lineNumber == calledLine) {
+                return child;
+            }
+        }
+        FrameNode child = new FrameNode(newId, this, calledMethod, calledLine);
+        children.add(child);
+        return child;
+    }
+
+    boolean matches(Location location) {
+        return method != null && method.getMethod().equals(location.method())
+                && lineNumber == location.lineNumber();
+    }
+
+    // Pile au format "Classe.methode() ligne N", sommet en premier
+    public List<String> toCallStack() {
+        List<String> callStack = new ArrayList<>(depth);
+        for (FrameNode node = this; node.parent != null; node = node.parent) {
+            callStack.add(node.getLabel());
+        }
+        return callStack;
+    }
+
+    public String getLabel() {
+        if (label == null) {
+            label = method.getContext() + " ligne " + lineNumber;
+        }
+        return label;
+    }
+
+    public int getId() { return id; }
+    public FrameNode getParent() { return parent; }
+    public MethodMetadataCache.MethodMetadata getMethod() { return method; }
+    public int getClassId() { return method != null ? method.getClassId() : -1; }
+    public int getMethodId() { return method != null ? method.getMethodId() : -1; }
+    public int getLineNumber() { return lineNumber; }
+    public int getDepth() { return depth; }
+
+    @Override
+    public String toString() {
+        return parent == null ? "<root>" : getLabel();
+    }
+}
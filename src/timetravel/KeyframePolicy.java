@@ -0,0 +1,19 @@
+package timetravel;
+
+/**
+ * Politique d'intervalle des keyframes pour les chaînes de deltas de variables.
+ * Tout snapshot se reconstruit depuis le keyframe qui le précède en au plus MAX_INTERVAL deltas.
+ */
+public class KeyframePolicy {
+    // Borne K sur le nombre de deltas à appliquer pour reconstruire un snapshot
+    public static final int MAX_INTERVAL = 32;
+
+    private KeyframePolicy() {
+    }
+
+    // Intervalle adaptatif : un nouveau keyframe est émis dès que les deltas accumulés depuis le précédent
+    // pèsent autant qu'une vue complète, ou que la chaîne atteint MAX_INTERVAL
+    public static boolean needsKeyframe(int chainLength, int accumulatedChanges, int fullSize) {
+        return chainLength >= MAX_INTERVAL || accumulatedChanges >= Math.max(fullSize, 1);
+    }
+}
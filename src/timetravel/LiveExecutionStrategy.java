@@ -28,13 +28,42 @@ public class LiveExecutionStrategy implements ExecutionStrategy {
         return createStepRequest(state, StepRequest.STEP_LINE, StepRequest.STEP_OVER, "Stepping over...");
     }
 
+    @Override
+    public CommandResult stepOut(DebuggerState state) {
+        if (state.getContext() == null) {
+            return CommandResult.error("No execution context available");
+        }
+        return createStepRequest(state, StepRequest.STEP_LINE, StepRequest.STEP_OUT, "Stepping out...");
+    }
+
+    @Override
+    public CommandResult stepBack(DebuggerState state) {
+        return CommandResult.error("Stepping backwards is only available in replay mode");
+    }
+
+    @Override
+    public CommandResult stepOverBack(DebuggerState state) {
+        return CommandResult.error("Stepping backwards is only available in replay mode");
+    }
+
     @Override
     public CommandResult continueRun(DebuggerState state) {
         return CommandResult.success("Continuing execution...");
     }
 
+    @Override
+    public CommandResult reverseContinue(DebuggerState state) {
+        return CommandResult.error("Reverse continue is only available in replay mode");
+    }
+
     @Override
     public CommandResult setBreakpoint(DebuggerState state, String fileName, int lineNumber) {
+        return setBreakpoint(state, fileName, lineNumber, Breakpoint.BreakpointType.NORMAL, 0);
+    }
+
+    @Override
+    public CommandResult setBreakpoint(DebuggerState state, String fileName, int lineNumber,
+                                       Breakpoint.BreakpointType type, int targetCount) {
         VirtualMachine vm = state.getVm();
 
         for (ReferenceType refType : vm.allClasses()) {
@@ -54,14 +83,12 @@ public class LiveExecutionStrategy implements ExecutionStrategy {
                                 fileName,
                                 lineNumber,
                                 req,
-                                Breakpoint.BreakpointType.NORMAL
+                                type,
+                                targetCount
                         );
                         state.getBreakpoints().put(key, bp);
 
-                        return CommandResult.success(
-                                "Breakpoint set at " + fileName + ":" + lineNumber,
-                                bp
-                        );
+                        return CommandResult.success(describeBreakpoint(bp), bp);
                     }
                 }
             } catch (AbsentInformationException e) {
@@ -72,6 +99,19 @@ public class LiveExecutionStrategy implements ExecutionStrategy {
         return CommandResult.error("Could not set breakpoint at " + fileName + ":" + lineNumber);
     }
 
+    private String describeBreakpoint(Breakpoint bp) {
+        String location = bp.getFileName() + ":" + bp.getLineNumber();
+        switch (bp.getType()) {
+            case ONCE:
+                return "One-time breakpoint set at " + location;
+            case ON_COUNT:
+                return "Conditional breakpoint set at " + location +
+                        " (will stop after " + bp.getTargetCount() + " hits)";
+            default:
+                return "Breakpoint set at " + location;
+        }
+    }
+
     @Override
     public CommandResult printVariable(DebuggerState state, String varName) {
         if (state.getContext() == null || state.getContext().getCurrentFrame() == null) {
@@ -0,0 +1,189 @@
+package timetravel;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Index inversé (fichier source, ligne) -> ids des snapshots passés par cette ligne.
+ * Les listes sont triées par construction puisque les ids sont attribués dans l'ordre.
+ * Quand le début de la chronologie est supprimé (flight recorder), les ids supprimés sont retirés des listes ;
+ * les numéros de passage restent ceux de tout l'enregistrement (ONCE, ON_COUNT).
+ * Relu depuis un fichier de trace, seule la table des lignes est en mémoire : les listes d'ids restent
+ * dans le fichier et y sont lues en place.
+ */
+public class LocationIndex {
+    private final Map<String, Integer> fileIds;
+    private final Map<Long, Postings> postingsByLocation;
+    // Fichier de trace d'où l'index a été relu, null pendant l'enregistrement
+    private final TraceSection section;
+
+    public LocationIndex() {
+        this(null);
+    }
+
+    private LocationIndex(TraceSection section) {
+        this.fileIds = new HashMap<>();
+        this.postingsByLocation = new HashMap<>();
+        this.section = section;
+    }
+
+    public void record(int snapshotId, String sourceFile, int lineNumber) {
+        checkWritable();
+        Integer fileId = fileIds.get(sourceFile);
+        if (fileId == null) {
+            fileId = fileIds.size();
+            fileIds.put(sourceFile, fileId);
+        }
+        postingsByLocation.computeIfAbsent(key(fileId, lineNumber), k -> new Postings()).add(snapshotId);
+    }
+
+    // Nombre de passages sur la ligne
+    public int hitCount(String sourceFile, int lineNumber) {
+        Postings postings = find(sourceFile, lineNumber);
+        return postings != null ? postings.discarded + postings.size : 0;
+    }
+
+    // Id du snapshot correspondant au passage n° hit (à partir de 0), ou -1 (y compris s'il a été supprimé)
+    public int hitAt(String sourceFile, int lineNumber, int hit) {
+        Postings postings = find(sourceFile, lineNumber);
+        if (postings == null || hit < postings.discarded || hit >= postings.discarded + postings.size) {
+            return -1;
+        }
+        return postings.idAt(hit - postings.discarded);
+    }
+
+    // Nombre de passages sur la ligne dont l'id est strictement inférieur à snapshotId (recherche dichotomique)
+    public int countHitsBefore(String sourceFile, int lineNumber, int snapshotId) {
+        Postings postings = find(sourceFile, lineNumber);
+        if (postings == null) {
+            return 0;
+        }
+        return postings.discarded + postings.countBefore(snapshotId);
+    }
+
+    // Retire les passages d'id inférieur à snapshotId
+    void discardBefore(int snapshotId) {
+        checkWritable();
+        for (Postings postings : postingsByLocation.values()) {
+            postings.discardBefore(snapshotId);
+        }
+    }
+
+    // Nombre de passages encore indexés, toutes lignes confondues
+    int entryCount() {
+        int count = 0;
+        for (Postings postings : postingsByLocation.values()) {
+            count += postings.size;
+        }
+        return count;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        checkWritable();
+        String[] files = new String[fileIds.size()];
+        for (Map.Entry<String, Integer> entry : fileIds.entrySet()) {
+            files[entry.getValue()] = entry.getKey();
+        }
+        out.writeInt(files.length);
+        for (String file : files) {
+            TraceFile.writeString(out, file);
+        }
+        out.writeInt(postingsByLocation.size());
+        for (Map.Entry<Long, Postings> entry : postingsByLocation.entrySet()) {
+            Postings postings = entry.getValue();
+            out.writeLong(entry.getKey());
+            out.writeInt(postings.discarded);
+            out.writeInt(postings.size);
+            for (int i = 0; i < postings.size; i++) {
+                out.writeInt(postings.ids[i]);
+            }
+        }
+    }
+
+    // Les ids de chaque ligne ne sont pas copiés : la liste garde leur position dans la section
+    static LocationIndex readFrom(TraceSection section) {
+        LocationIndex index = new LocationIndex(section);
+        int fileCount = section.getInt();
+        for (int i = 0; i < fileCount; i++) {
+            index.fileIds.put(section.getString(), i);
+        }
+        int locationCount = section.getInt();
+        for (int i = 0; i < locationCount; i++) {
+            long key = section.getLong();
+            int discarded = section.getInt();
+            int size = section.getInt();
+            index.postingsByLocation.put(key, new Postings(section, section.position(), size, discarded));
+            section.skip(4L * size);
+        }
+        return index;
+    }
+
+    private Postings find(String sourceFile, int lineNumber) {
+        Integer fileId = fileIds.get(sourceFile);
+        return fileId != null ? postingsByLocation.get(key(fileId, lineNumber)) : null;
+    }
+
+    private static long key(int fileId, int lineNumber) {
+        return ((long) fileId << 32) | (lineNumber & 0xFFFFFFFFL);
+    }
+
+    private void checkWritable() {
+        if (section != null) {
+            throw new IllegalStateException("Index relu depuis un fichier de trace : lecture seule");
+        }
+    }
+
+    private static class Postings {
+        private int[] ids;
+        private int size;
+        // Passages retirés en tête de liste
+        private int discarded;
+        // Liste relue : ids lus en place à partir de idsAt
+        private final TraceSection section;
+        private final long idsAt;
+
+        Postings() {
+            this.ids = new int[4];
+            this.section = null;
+            this.idsAt = -1;
+        }
+
+        Postings(TraceSection section, long idsAt, int size, int discarded) {
+            this.section = section;
+            this.idsAt = idsAt;
+            this.size = size;
+            this.discarded = discarded;
+        }
+
+        int idAt(int index) {
+            return section != null ? section.getInt(idsAt + 4L * index) : ids[index];
+        }
+
+        void add(int snapshotId) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = snapshotId;
+        }
+
+        int countBefore(int snapshotId) {
+            int index = section != null
+                    ? section.binarySearch(idsAt, 0, size, snapshotId)
+                    : Arrays.binarySearch(ids, 0, size, snapshotId);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        // Les passages restants sont ramenés en tête ; le tableau rétrécit s'il est devenu trop grand
+        void discardBefore(int snapshotId) {
+            int count = countBefore(snapshotId);
+            if (count == 0) return;
+            size -= count;
+            discarded += count;
+            if (ids.length > 16 && size < ids.length / 4) {
+                ids = Arrays.copyOfRange(ids, count, count + Math.max(size * 2, 4));
+            } else {
+                System.arraycopy(ids, count, ids, 0, size);
+            }
+        }
+    }
+}
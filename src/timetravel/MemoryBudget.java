@@ -0,0 +1,72 @@
+package timetravel;
+
+/**
+ * Limite de la chronologie gardée en mémoire, en octets ou en nombre de snapshots.
+ * Au-delà, les tranches les plus anciennes sont déversées sur disque (SPILL) et relues au replay,
+ * ou supprimées (DROP, mode « flight recorder » qui ne garde que les derniers pas).
+ * La mémoire se libère par tranche : elle peut dépasser la limite de la tranche en cours, au plus un quart
+ * du budget (voir ColumnarTimelineStore.getSegmentSize).
+ */
+public class MemoryBudget {
+    public enum Overflow { SPILL, DROP }
+
+    public static final MemoryBudget UNLIMITED = new MemoryBudget(0, 0, Overflow.SPILL);
+    // Derniers pas gardés par un flight recorder sans budget explicite
+    public static final int DEFAULT_FLIGHT_RECORDER_STEPS = 100_000;
+
+    // 0 : pas de limite de ce côté
+    private final long maxBytes;
+    private final int maxSnapshots;
+    private final Overflow overflow;
+
+    public MemoryBudget(long maxBytes, int maxSnapshots, Overflow overflow) {
+        if (maxBytes < 0 || maxSnapshots < 0) {
+            throw new IllegalArgumentException("Budget mémoire négatif");
+        }
+        this.maxBytes = maxBytes;
+        this.maxSnapshots = maxSnapshots;
+        this.overflow = overflow;
+    }
+
+    // "100000" : nombre de snapshots ; "64mb", "512kb", "2gb" : octets
+    public static MemoryBudget parse(String value, Overflow overflow) {
+        String lower = value.trim().toLowerCase();
+        long unit = lower.endsWith("kb") ? 1L << 10 : lower.endsWith("mb") ? 1L << 20 : lower.endsWith("gb") ? 1L << 30 : 0;
+        try {
+            if (unit == 0) {
+                return new MemoryBudget(0, Integer.parseInt(lower), overflow);
+            }
+            return new MemoryBudget(Long.parseLong(lower.substring(0, lower.length() - 2)) * unit, 0, overflow);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Budget mémoire invalide : " + value);
+        }
+    }
+
+    public MemoryBudget withOverflow(Overflow overflow) {
+        if (isUnlimited() && overflow == Overflow.DROP) {
+            return new MemoryBudget(0, DEFAULT_FLIGHT_RECORDER_STEPS, overflow);
+        }
+        return new MemoryBudget(maxBytes, maxSnapshots, overflow);
+    }
+
+    public boolean isUnlimited() {
+        return maxBytes == 0 && maxSnapshots == 0;
+    }
+
+    public boolean isExceeded(long residentBytes, int residentSnapshots) {
+        return (maxBytes > 0 && residentBytes > maxBytes) || (maxSnapshots > 0 && residentSnapshots > maxSnapshots);
+    }
+
+    public long getMaxBytes() { return maxBytes; }
+    public int getMaxSnapshots() { return maxSnapshots; }
+    public Overflow getOverflow() { return overflow; }
+
+    @Override
+    public String toString() {
+        if (isUnlimited()) return "mémoire illimitée";
+        String limit = maxSnapshots > 0 ? maxSnapshots + " snapshots" : (maxBytes >> 10) + " Ko";
+        return overflow == Overflow.DROP
+                ? "flight recorder, derniers " + limit
+                : limit + " en mémoire, le reste sur disque";
+    }
+}
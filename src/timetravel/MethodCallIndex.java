@@ -0,0 +1,541 @@
+package timetravel;
+
+import timetravel.TimelineManager.MethodCallRecord;
+import java.io.*;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Arbre des appels construit pendant l'enregistrement, avec index inversés
+ * nom de méthode -> appels et signature -> appels, triés par snapshot d'entrée.
+ * Chaque thread a sa propre pile d'appels en cours ; les durées sont comptées en pas du thread.
+ * Alimenté par le thread d'indexation pendant l'enregistrement : les lectures se font sous le même verrou
+ * et renvoient des copies.
+ * Quand le début de la chronologie est supprimé (flight recorder), les appels commencés avant et déjà retournés
+ * sont retirés ; les appels encore en cours restent, sans leurs enfants retirés.
+ * Relu depuis un fichier de trace, l'index ne garde en mémoire que les noms et signatures : les listes d'appels
+ * sont des index lus en place, et un appel n'est décodé (avec ses appelants) que lorsqu'il est lu.
+ */
+public class MethodCallIndex {
+    // Appels décodés gardés en mémoire, les plus récemment lus
+    private static final int DECODED_CACHE_SIZE = 1024;
+    // Taille d'un appel dans le fichier, hors paramètres et enfants : douze entiers, valeur de retour, nombre d'enfants
+    private static final int CALL_SIZE = 12 * 4 + 9 + 4;
+    private static final int ARGUMENT_SIZE = 4 + 1 + 8;
+
+    private final CallList allCalls;
+    private final Map<String, CallList> callsByMethodName;
+    private final Map<String, CallList> callsBySignature;
+    private final CallList roots;
+    // Indexé par id de thread
+    private final List<ThreadCalls> threads;
+
+    // Index relu depuis un fichier de trace, null pendant l'enregistrement : position relative de chaque appel
+    // (recordPositionsAt), id d'entrée de chaque appel (entryIdsAt) et début des appels (recordsAt)
+    private final TraceSection section;
+    private StringDictionary strings;
+    private ValueTable values;
+    private long recordPositionsAt;
+    private long entryIdsAt;
+    private long recordsAt;
+    private Map<Integer, MethodCallRecord> decoded;
+
+    public MethodCallIndex() {
+        this.allCalls = new CallList();
+        this.callsByMethodName = new HashMap<>();
+        this.callsBySignature = new HashMap<>();
+        this.roots = new CallList();
+        this.threads = new ArrayList<>();
+        this.section = null;
+    }
+
+    // Lit les tables de la section CALLS (voir writeTo) et note la position des appels
+    private MethodCallIndex(TraceSection section, ValueTable values) {
+        this.section = section;
+        this.values = values;
+        this.callsByMethodName = new HashMap<>();
+        this.callsBySignature = new HashMap<>();
+        this.threads = new ArrayList<>();
+        int threadCount = section.getInt();
+        for (int t = 0; t < threadCount; t++) {
+            threadCalls(t).steps = section.getInt();
+        }
+        this.strings = StringDictionary.readFrom(section);
+        int callCount = section.getInt();
+        this.recordPositionsAt = section.position();
+        this.entryIdsAt = recordPositionsAt + 8L * callCount;
+        section.skip(12L * callCount);
+        this.allCalls = new CallList(this, -1, callCount);
+        this.roots = readCallList();
+        for (int n = section.getInt(); n > 0; n--) {
+            String methodName = strings.get(section.getInt());
+            callsByMethodName.put(methodName, readCallList());
+        }
+        for (int n = section.getInt(); n > 0; n--) {
+            String methodSignature = strings.get(section.getInt());
+            callsBySignature.put(methodSignature, readCallList());
+        }
+        this.recordsAt = section.position();
+        this.decoded = new LinkedHashMap<Integer, MethodCallRecord>(DECODED_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, MethodCallRecord> eldest) {
+                return size() > DECODED_CACHE_SIZE;
+            }
+        };
+    }
+
+    // Met à jour l'arbre : ferme les appels retournés et ouvre l'appel courant s'il est nouveau ;
+    // renvoie l'appel ouvert par ce snapshot, null si le snapshot continue l'appel en cours
+    public synchronized MethodCallRecord record(ExecutionSnapshot snapshot, String methodSignature) {
+        checkWritable();
+        int depth = snapshot.getStackDepth();
+        ThreadCalls thread = threadCalls(snapshot.getThreadId());
+        int step = thread.steps++;
+        FrameNode caller = snapshot.getCallStackTop().getParent();
+
+        while (!thread.openCalls.isEmpty() && thread.openCalls.peekLast().getDepth() > depth) {
+            thread.close(snapshot.getSnapshotId(), step);
+        }
+
+        MethodCallRecord top = thread.openCalls.peekLast();
+        if (top != null && top.getDepth() == depth) {
+            // La frame appelante (ligne comprise) ne change pas pendant un appel : si elle a changé,
+            // l'appelant a repris la main entre deux snapshots (code hors portée non enregistré)
+            if (top.getFullSignature().equals(methodSignature) && thread.openCallers.peekLast() == caller) {
+                return null;
+            }
+            // Appel frère au même niveau sans repasser par l'appelant
+            thread.close(snapshot.getSnapshotId(), step);
+            top = thread.openCalls.peekLast();
+        }
+
+        MethodCallRecord call = new MethodCallRecord(
+                snapshot.getSnapshotId(),
+                snapshot.getMethodName(),
+                snapshot.getSourceFile(),
+                snapshot.getLineNumber(),
+                methodSignature,
+                depth,
+                top);
+        call.startOnThread(snapshot.getThreadId(), step);
+        if (top != null) {
+            top.addChild(call);
+        } else {
+            roots.add(call);
+        }
+        thread.openCalls.addLast(call);
+        thread.openCallers.addLast(caller);
+
+        allCalls.add(call);
+        callsByMethodName.computeIfAbsent(call.getMethodName(), k -> new CallList()).add(call);
+        callsBySignature.computeIfAbsent(methodSignature, k -> new CallList()).add(call);
+        return call;
+    }
+
+    // Ferme l'appel du sommet sur un MethodExitEvent : le snapshot de sortie fait encore partie de l'appel,
+    // qui se termine donc au snapshot suivant
+    public synchronized MethodCallRecord recordReturn(ExecutionSnapshot exitSnapshot, byte returnTag, long returnBits,
+                                         ValueTable values) {
+        checkWritable();
+        ThreadCalls thread = threadCalls(exitSnapshot.getThreadId());
+        MethodCallRecord top = thread.openCalls.peekLast();
+        if (top == null || top.getDepth() != exitSnapshot.getStackDepth()
+                || !top.getFullSignature().equals(exitSnapshot.getMethodContext())) {
+            return null;
+        }
+        thread.close(exitSnapshot.getSnapshotId() + 1, thread.steps);
+        top.setReturnValue(returnTag, returnBits, values);
+        return top;
+    }
+
+    private ThreadCalls threadCalls(int threadId) {
+        while (threads.size() <= threadId) {
+            threads.add(new ThreadCalls());
+        }
+        return threads.get(threadId);
+    }
+
+    public synchronized List<MethodCallRecord> getAllCalls() {
+        return allCalls.view();
+    }
+
+    // Appels commencés au plus tard au snapshot maxSnapshotId
+    public synchronized List<MethodCallRecord> getCallsUpTo(int maxSnapshotId) {
+        return allCalls.upTo(maxSnapshotId);
+    }
+
+    public synchronized List<MethodCallRecord> getCallsToMethod(String methodName) {
+        CallList calls = callsByMethodName.get(methodName);
+        return calls != null ? calls.view() : Collections.emptyList();
+    }
+
+    public synchronized List<MethodCallRecord> getCallsToMethodUpTo(String methodName, int maxSnapshotId) {
+        CallList calls = callsByMethodName.get(methodName);
+        return calls != null ? calls.upTo(maxSnapshotId) : Collections.emptyList();
+    }
+
+    public synchronized List<MethodCallRecord> getCallsToSignature(String methodSignature) {
+        CallList calls = callsBySignature.get(methodSignature);
+        return calls != null ? calls.view() : Collections.emptyList();
+    }
+
+    // Signatures des méthodes ayant appelé methodName
+    public synchronized Set<String> getCallersOf(String methodName) {
+        Set<String> callers = new LinkedHashSet<>();
+        for (MethodCallRecord call : getCallsToMethod(methodName)) {
+            if (call.getParent() != null) {
+                callers.add(call.getParent().getFullSignature());
+            }
+        }
+        return callers;
+    }
+
+    // Nombre total de snapshots passés dans methodName (appels imbriqués compris) ;
+    // un appel récursif n'est compté qu'une fois via son appel le plus externe
+    public synchronized long getStepsSpentIn(String methodName) {
+        long steps = 0;
+        for (MethodCallRecord call : getCallsToMethod(methodName)) {
+            if (!hasAncestorNamed(call, methodName)) {
+                steps += stepCount(call);
+            }
+        }
+        return steps;
+    }
+
+    public synchronized List<MethodCallRecord> getRoots() {
+        return roots.view();
+    }
+
+    // Nombre de snapshots du thread passés dans l'appel ; un appel non retourné court jusqu'à la fin de l'enregistrement
+    public synchronized int stepCount(MethodCallRecord call) {
+        int exit = call.hasReturned() ? call.getExitStep() : threads.get(call.getThreadId()).steps;
+        return exit - call.getEntryStep();
+    }
+
+    // Tables puis appels dans l'ordre d'entrée (un appelant précède ses appels) ; les chaînes passent par
+    // un dictionnaire. Les listes (racines, par nom, par signature, enfants) sont des index dans cet ordre,
+    // et la table des positions permet de relire un appel sans lire ceux qui le précèdent
+    synchronized void writeTo(DataOutputStream out) throws IOException {
+        checkWritable();
+        out.writeInt(threads.size());
+        for (ThreadCalls thread : threads) {
+            out.writeInt(thread.steps);
+        }
+
+        List<MethodCallRecord> calls = allCalls.calls;
+        StringDictionary strings = new StringDictionary();
+        Map<MethodCallRecord, Integer> indexes = new IdentityHashMap<>();
+        for (MethodCallRecord call : calls) {
+            indexes.put(call, indexes.size());
+            strings.idOf(call.getMethodName());
+            strings.idOf(call.getSourceFile());
+            strings.idOf(call.getFullSignature());
+            VariableValues arguments = call.getArgumentValues();
+            for (int i = 0; arguments != null && i < arguments.size(); i++) {
+                strings.idOf(arguments.nameAt(i));
+            }
+        }
+        strings.writeTo(out);
+
+        // Enfants encore indexés de chaque appel, pour connaître la taille des appels avant de les écrire
+        List<int[]> children = new ArrayList<>(calls.size());
+        out.writeInt(calls.size());
+        long position = 0;
+        for (MethodCallRecord call : calls) {
+            int[] childIndexes = call.getChildren().stream().map(indexes::get).filter(Objects::nonNull)
+                    .mapToInt(Integer::intValue).toArray();
+            children.add(childIndexes);
+            out.writeLong(position);
+            VariableValues arguments = call.getArgumentValues();
+            position += CALL_SIZE + (arguments != null ? arguments.size() * ARGUMENT_SIZE : 0) + 4L * childIndexes.length;
+        }
+        for (MethodCallRecord call : calls) {
+            out.writeInt(call.getSnapshotId());
+        }
+        writeCallList(out, roots, indexes);
+        out.writeInt(callsByMethodName.size());
+        for (Map.Entry<String, CallList> entry : callsByMethodName.entrySet()) {
+            out.writeInt(strings.find(entry.getKey()));
+            writeCallList(out, entry.getValue(), indexes);
+        }
+        out.writeInt(callsBySignature.size());
+        for (Map.Entry<String, CallList> entry : callsBySignature.entrySet()) {
+            out.writeInt(strings.find(entry.getKey()));
+            writeCallList(out, entry.getValue(), indexes);
+        }
+
+        for (int c = 0; c < calls.size(); c++) {
+            MethodCallRecord call = calls.get(c);
+            // Un appelant retiré (flight recorder) n'est pas écrit : l'appel redevient une racine
+            Integer parent = call.getParent() != null ? indexes.get(call.getParent()) : null;
+            out.writeInt(parent != null ? parent : -1);
+            out.writeInt(call.getSnapshotId());
+            out.writeInt(strings.find(call.getMethodName()));
+            out.writeInt(strings.find(call.getSourceFile()));
+            out.writeInt(call.getLineNumber());
+            out.writeInt(strings.find(call.getFullSignature()));
+            out.writeInt(call.getDepth());
+            out.writeInt(call.getThreadId());
+            out.writeInt(call.getEntryStep());
+            out.writeInt(call.getExitSnapshotId());
+            out.writeInt(call.getExitStep());
+            VariableValues arguments = call.getArgumentValues();
+            out.writeInt(arguments != null ? arguments.size() : -1);
+            for (int i = 0; arguments != null && i < arguments.size(); i++) {
+                out.writeInt(strings.find(arguments.nameAt(i)));
+                out.writeByte(arguments.tagAt(i));
+                out.writeLong(arguments.bitsAt(i));
+            }
+            out.writeByte(call.getReturnTag());
+            out.writeLong(call.getReturnBits());
+            out.writeInt(children.get(c).length);
+            for (int child : children.get(c)) {
+                out.writeInt(child);
+            }
+        }
+    }
+
+    private static void writeCallList(DataOutputStream out, CallList list, Map<MethodCallRecord, Integer> indexes)
+            throws IOException {
+        out.writeInt(list.size());
+        for (MethodCallRecord call : list.calls) {
+            out.writeInt(indexes.get(call));
+        }
+    }
+
+    static MethodCallIndex readFrom(TraceSection section, ValueTable values) {
+        return new MethodCallIndex(section, values);
+    }
+
+    private CallList readCallList() {
+        int size = section.getInt();
+        CallList list = new CallList(this, section.position(), size);
+        section.skip(4L * size);
+        return list;
+    }
+
+    // Appel n° index de l'index relu ; ses appelants pas encore décodés le sont d'abord, du plus externe au plus interne
+    private synchronized MethodCallRecord callAt(int index) {
+        MethodCallRecord call = decoded.get(index);
+        if (call != null) {
+            return call;
+        }
+        Deque<Integer> undecoded = new ArrayDeque<>();
+        MethodCallRecord parent = null;
+        for (int ancestor = index; ancestor >= 0; ancestor = section.getInt(recordAt(ancestor))) {
+            parent = decoded.get(ancestor);
+            if (parent != null) break;
+            undecoded.push(ancestor);
+        }
+        while (!undecoded.isEmpty()) {
+            int next = undecoded.pop();
+            parent = decode(next, parent);
+            decoded.put(next, parent);
+        }
+        return parent;
+    }
+
+    private MethodCallRecord decode(int index, MethodCallRecord parent) {
+        long at = recordAt(index);
+        int argumentCount = section.getInt(at + 44);
+        long argumentsAt = at + 48;
+        long returnAt = argumentsAt + (argumentCount > 0 ? (long) argumentCount * ARGUMENT_SIZE : 0);
+        long childrenAt = returnAt + 9;
+        MethodCallRecord call = new MethodCallRecord(section.getInt(at + 4), strings.get(section.getInt(at + 8)),
+                strings.get(section.getInt(at + 12)), section.getInt(at + 16), strings.get(section.getInt(at + 20)),
+                section.getInt(at + 24), parent,
+                new CallList(this, childrenAt + 4, section.getInt(childrenAt)).view());
+        call.startOnThread(section.getInt(at + 28), section.getInt(at + 32));
+        int exitSnapshotId = section.getInt(at + 36);
+        if (exitSnapshotId >= 0) {
+            call.setExit(exitSnapshotId, section.getInt(at + 40));
+        }
+        if (argumentCount >= 0) {
+            VariableValues arguments = new VariableValues(argumentCount);
+            for (int i = 0; i < argumentCount; i++) {
+                long argumentAt = argumentsAt + (long) i * ARGUMENT_SIZE;
+                arguments.put(strings.get(section.getInt(argumentAt)), section.get(argumentAt + 4),
+                        section.getLong(argumentAt + 5));
+            }
+            call.setArguments(arguments, values);
+        }
+        byte returnTag = section.get(returnAt);
+        if (returnTag != ValueTable.UNSET) {
+            call.setReturnValue(returnTag, section.getLong(returnAt + 1), values);
+        }
+        return call;
+    }
+
+    private long recordAt(int index) {
+        return recordsAt + section.getLong(recordPositionsAt + 8L * index);
+    }
+
+    private int entryIdAt(int index) {
+        return section.getInt(entryIdsAt + 4L * index);
+    }
+
+    private void checkWritable() {
+        if (section != null) {
+            throw new IllegalStateException("Index relu depuis un fichier de trace : lecture seule");
+        }
+    }
+
+    // Retire les appels retournés dont l'entrée précède snapshotId, des index comme de l'arbre
+    synchronized void discardBefore(int snapshotId) {
+        checkWritable();
+        if (allCalls.size() == 0 || allCalls.calls.get(0).getSnapshotId() >= snapshotId) return;
+        Set<MethodCallRecord> pruned = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MethodCallRecord call : allCalls.calls) {
+            if (call.getSnapshotId() < snapshotId) {
+                // Appel en cours commencé avant : ses enfants retirés ne doivent pas rester accessibles
+                if (isKept(call, snapshotId)) {
+                    call.retainChildren(child -> isKept(child, snapshotId));
+                }
+                continue;
+            }
+            // Appelant retiré d'un appel gardé : il reste accessible par getParent, sans ses autres enfants
+            for (MethodCallRecord parent = call.getParent(); parent != null && !isKept(parent, snapshotId)
+                    && pruned.add(parent); parent = parent.getParent()) {
+                parent.retainChildren(child -> isKept(child, snapshotId));
+            }
+        }
+        allCalls.retain(call -> isKept(call, snapshotId));
+        for (CallList calls : callsByMethodName.values()) {
+            calls.retain(call -> isKept(call, snapshotId));
+        }
+        for (CallList calls : callsBySignature.values()) {
+            calls.retain(call -> isKept(call, snapshotId));
+        }
+        roots.retain(call -> isKept(call, snapshotId));
+    }
+
+    private static boolean isKept(MethodCallRecord call, int firstSnapshotId) {
+        return call.getSnapshotId() >= firstSnapshotId || !call.hasReturned();
+    }
+
+    private boolean hasAncestorNamed(MethodCallRecord call, String methodName) {
+        for (MethodCallRecord p = call.getParent(); p != null; p = p.getParent()) {
+            if (p.getMethodName().equals(methodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Appels en cours d'un thread, du plus ancien (bas de pile) au plus récent, avec leur frame appelante
+    private static class ThreadCalls {
+        private final Deque<MethodCallRecord> openCalls = new ArrayDeque<>();
+        private final Deque<FrameNode> openCallers = new ArrayDeque<>();
+        // Nombre de snapshots du thread déjà enregistrés
+        private int steps;
+
+        void close(int exitSnapshotId, int exitStep) {
+            openCallers.pollLast();
+            openCalls.pollLast().setExit(exitSnapshotId, exitStep);
+        }
+    }
+
+    // Liste d'appels triée par snapshot d'entrée, avec les ids dans un tableau primitif pour la recherche.
+    // Relue depuis un fichier de trace : index des appels lus en place (tous les appels dans l'ordre si indicesAt < 0)
+    private static class CallList {
+        private final ArrayList<MethodCallRecord> calls;
+        private int[] entryIds;
+        private final MethodCallIndex index;
+        private final long indicesAt;
+        private final int recordedSize;
+
+        CallList() {
+            this.calls = new ArrayList<>();
+            this.entryIds = new int[4];
+            this.index = null;
+            this.indicesAt = -1;
+            this.recordedSize = 0;
+        }
+
+        CallList(MethodCallIndex index, long indicesAt, int size) {
+            this.calls = null;
+            this.index = index;
+            this.indicesAt = indicesAt;
+            this.recordedSize = size;
+        }
+
+        int size() {
+            return index != null ? recordedSize : calls.size();
+        }
+
+        void add(MethodCallRecord call) {
+            int size = calls.size();
+            if (size == entryIds.length) {
+                entryIds = Arrays.copyOf(entryIds, size * 2);
+            }
+            entryIds[size] = call.getSnapshotId();
+            calls.add(call);
+        }
+
+        // Copie pendant l'enregistrement ; une liste relue ne change plus et se décode à la lecture
+        List<MethodCallRecord> view() {
+            if (index != null) {
+                return recorded(recordedSize);
+            }
+            return Collections.unmodifiableList(new ArrayList<>(calls));
+        }
+
+        List<MethodCallRecord> upTo(int maxSnapshotId) {
+            if (index != null) {
+                int low = 0;
+                int high = recordedSize;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (index.entryIdAt(callIndex(middle)) <= maxSnapshotId) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                return recorded(low);
+            }
+            int position = Arrays.binarySearch(entryIds, 0, calls.size(), maxSnapshotId);
+            int end = position >= 0 ? position + 1 : -position - 1;
+            return Collections.unmodifiableList(new ArrayList<>(calls.subList(0, end)));
+        }
+
+        // Garde les appels acceptés, dans le même ordre
+        void retain(Predicate<MethodCallRecord> kept) {
+            int size = 0;
+            for (int i = 0; i < calls.size(); i++) {
+                MethodCallRecord call = calls.get(i);
+                if (kept.test(call)) {
+                    calls.set(size, call);
+                    entryIds[size++] = call.getSnapshotId();
+                }
+            }
+            calls.subList(size, calls.size()).clear();
+            if (entryIds.length > 16 && size < entryIds.length / 4) {
+                entryIds = Arrays.copyOf(entryIds, Math.max(size * 2, 4));
+                calls.trimToSize();
+            }
+        }
+
+        private int callIndex(int position) {
+            return indicesAt < 0 ? position : index.section.getInt(indicesAt + 4L * position);
+        }
+
+        // Les size premiers appels de la liste relue
+        private List<MethodCallRecord> recorded(int size) {
+            return new AbstractList<MethodCallRecord>() {
+                @Override
+                public MethodCallRecord get(int position) {
+                    if (position < 0 || position >= size) {
+                        throw new IndexOutOfBoundsException("Appel " + position + " sur " + size);
+                    }
+                    return index.callAt(callIndex(position));
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package timetravel;
+
+import com.sun.jdi.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Cache côté enregistreur des métadonnées d'une méthode : noms internés (classe, méthode, fichier source)
+ * et variables visibles par index de bytecode. Une méthode n'est interrogée qu'une fois sur la VM cible.
+ */
+public class MethodMetadataCache {
+    private final Map<Method, MethodMetadata> metadataByMethod;
+    private final Map<String, String> internedNames;
+    // Ids entiers des classes et des méthodes ; les surcharges d'une méthode partagent le même id
+    private final StringDictionary classNames;
+    private final StringDictionary methodContexts;
+
+    public MethodMetadataCache() {
+        this(new StringDictionary(), new StringDictionary());
+    }
+
+    private MethodMetadataCache(StringDictionary classNames, StringDictionary methodContexts) {
+        this.metadataByMethod = new HashMap<>();
+        this.internedNames = new HashMap<>();
+        this.classNames = classNames;
+        this.methodContexts = methodContexts;
+    }
+
+    public MethodMetadata get(Method method) {
+        MethodMetadata metadata = metadataByMethod.get(method);
+        if (metadata == null) {
+            metadata = new MethodMetadata(method);
+            metadataByMethod.put(method, metadata);
+        }
+        return metadata;
+    }
+
+    public int size() {
+        return metadataByMethod.size();
+    }
+
+    public String getClassName(int classId) {
+        return classNames.get(classId);
+    }
+
+    // "Classe.methode()" correspondant à un id de méthode
+    public String getMethodContext(int methodId) {
+        return methodContexts.get(methodId);
+    }
+
+    // Métadonnées relues depuis un fichier de trace, sans méthode JDI : les ids sont retrouvés
+    // dans les dictionnaires relus (readFrom), donc identiques à ceux de l'enregistrement
+    MethodMetadata restore(String className, String methodName, String sourceName, List<String> argumentNames) {
+        return new MethodMetadata(className, methodName, sourceName, argumentNames);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        classNames.writeTo(out);
+        methodContexts.writeTo(out);
+    }
+
+    static MethodMetadataCache readFrom(TraceSection section) {
+        return new MethodMetadataCache(StringDictionary.readFrom(section), StringDictionary.readFrom(section));
+    }
+
+    private String intern(String name) {
+        if (name == null) return null;
+        String interned = internedNames.putIfAbsent(name, name);
+        return interned != null ? interned : name;
+    }
+
+    public class MethodMetadata {
+        private final Method method;
+        private final String className;
+        private final String methodName;
+        private final int classId;
+        private final int methodId;
+        // "Classe.methode()", contexte des variables et préfixe des frames de la pile d'appels
+        private final String context;
+        private final String sourceName;
+        // null si la méthode n'a pas de table des variables (compilée sans -g)
+        private final List<LocalVariable> variables;
+        // Noms des paramètres, dans l'ordre de déclaration (vide sans table des variables)
+        private final List<String> argumentNames;
+        private final Map<Long, List<LocalVariable>> visibleByCodeIndex;
+
+        private MethodMetadata(Method method) {
+            this.method = method;
+            this.className = intern(method.declaringType().name());
+            this.methodName = intern(method.name());
+            this.context = intern(className + "." + methodName + "()");
+            this.classId = classNames.idOf(className);
+            this.methodId = methodContexts.idOf(context);
+            this.sourceName = intern(readSourceName(method));
+            this.variables = readVariables(method);
+            this.argumentNames = readArgumentNames(method);
+            this.visibleByCodeIndex = new HashMap<>();
+        }
+
+        private MethodMetadata(String className, String methodName, String sourceName, List<String> argumentNames) {
+            this.method = null;
+            this.className = intern(className);
+            this.methodName = intern(methodName);
+            this.context = intern(className + "." + methodName + "()");
+            this.classId = classNames.idOf(this.className);
+            this.methodId = methodContexts.idOf(context);
+            this.sourceName = intern(sourceName);
+            this.variables = null;
+            List<String> names = new ArrayList<>(argumentNames.size());
+            for (String name : argumentNames) {
+                names.add(intern(name));
+            }
+            this.argumentNames = Collections.unmodifiableList(names);
+            this.visibleByCodeIndex = Collections.emptyMap();
+        }
+
+        // Variables visibles à l'emplacement de la frame ; calculé une fois par index de bytecode
+        public List<LocalVariable> visibleVariables(StackFrame frame) throws AbsentInformationException {
+            if (variables == null) {
+                throw new AbsentInformationException();
+            }
+            long codeIndex = frame.location().codeIndex();
+            List<LocalVariable> visible = visibleByCodeIndex.get(codeIndex);
+            if (visible == null) {
+                visible = computeVisible(frame);
+                visibleByCodeIndex.put(codeIndex, visible);
+            }
+            return visible;
+        }
+
+        // Même règle que StackFrame.visibleVariables : une variable masque celle de même nom de portée englobante
+        private List<LocalVariable> computeVisible(StackFrame frame) {
+            Map<String, LocalVariable> byName = new LinkedHashMap<>();
+            for (LocalVariable variable : variables) {
+                if (variable.isVisible(frame)) {
+                    LocalVariable hidden = byName.get(variable.name());
+                    if (hidden == null || variable.compareTo(hidden) > 0) {
+                        byName.put(variable.name(), variable);
+                    }
+                }
+            }
+            return Collections.unmodifiableList(new ArrayList<>(byName.values()));
+        }
+
+        // null pour des métadonnées relues depuis un fichier de trace
+        public Method getMethod() { return method; }
+        public String getClassName() { return className; }
+        public String getMethodName() { return methodName; }
+        public String getContext() { return context; }
+        public int getClassId() { return classId; }
+        public int getMethodId() { return methodId; }
+        public List<String> getArgumentNames() { return argumentNames; }
+
+        // Fichier source ou null, sans exception : pour l'écriture d'un fichier de trace
+        String findSourceName() { return sourceName; }
+
+        public String getSourceName() throws AbsentInformationException {
+            if (sourceName == null) {
+                throw new AbsentInformationException();
+            }
+            return sourceName;
+        }
+    }
+
+    private static String readSourceName(Method method) {
+        try {
+            return method.declaringType().sourceName();
+        } catch (AbsentInformationException e) {
+            return null;
+        }
+    }
+
+    private List<String> readArgumentNames(Method method) {
+        try {
+            List<String> names = new ArrayList<>();
+            for (LocalVariable argument : method.arguments()) {
+                names.add(intern(argument.name()));
+            }
+            return Collections.unmodifiableList(names);
+        } catch (AbsentInformationException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static List<LocalVariable> readVariables(Method method) {
+        try {
+            return method.variables();
+        } catch (AbsentInformationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package timetravel;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Sortie du programme stockée une seule fois, en ajout seulement.
+ * Les snapshots ne retiennent que la longueur (en caractères) de la sortie au moment de leur capture.
+ * Chaque morceau est estampillé avec le snapshot courant lors de son écriture (offsets triés par construction).
+ * Alimentée par les threads de lecture du processus cible, d'où la synchronisation.
+ * Quand le début de la chronologie est supprimé (flight recorder), la sortie écrite avant est retirée ;
+ * les offsets restent comptés depuis le début de l'exécution.
+ * Relue depuis un fichier de trace, la sortie reste dans le fichier (UTF-16, un caractère par offset)
+ * et n'est lue qu'à la demande, comme les estampilles des morceaux.
+ */
+public class OutputLog {
+    private final StringBuilder text;
+    // Offset du premier caractère encore gardé dans text
+    private int start;
+    private int[] chunkOffsets;
+    private int[] chunkSnapshotIds;
+    private int chunkCount;
+    // Sortie relue depuis un fichier de trace, null pendant l'enregistrement : positions du texte et des morceaux
+    private final TraceSection section;
+    private long offsetsAt;
+    private long snapshotIdsAt;
+    private long textAt;
+    private int mappedLength;
+
+    public OutputLog() {
+        this.text = new StringBuilder();
+        this.chunkOffsets = new int[64];
+        this.chunkSnapshotIds = new int[64];
+        this.section = null;
+    }
+
+    private OutputLog(TraceSection section) {
+        this.text = null;
+        this.section = section;
+        this.start = section.getInt();
+        this.mappedLength = section.getInt();
+        this.chunkCount = section.getInt();
+        this.offsetsAt = section.position();
+        this.snapshotIdsAt = offsetsAt + 4L * chunkCount;
+        this.textAt = snapshotIdsAt + 4L * chunkCount;
+    }
+
+    public synchronized void append(String chunk) {
+        append(chunk, -1);
+    }
+
+    public synchronized void append(String chunk, int snapshotId) {
+        checkWritable();
+        if (chunk.isEmpty()) return;
+        if (chunkCount == chunkOffsets.length) {
+            chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount * 2);
+            chunkSnapshotIds = Arrays.copyOf(chunkSnapshotIds, chunkCount * 2);
+        }
+        chunkOffsets[chunkCount] = start + text.length();
+        chunkSnapshotIds[chunkCount] = snapshotId;
+        chunkCount++;
+        text.append(chunk);
+    }
+
+    // Snapshot courant lors de l'écriture du caractère à cet offset (recherche dichotomique), ou -1
+    public synchronized int snapshotAt(int offset) {
+        if (offset < start || offset >= start + retainedLength()) {
+            return -1;
+        }
+        int index = section != null
+                ? section.binarySearch(offsetsAt, 0, chunkCount, offset)
+                : Arrays.binarySearch(chunkOffsets, 0, chunkCount, offset);
+        int chunk = index >= 0 ? index : -index - 2;
+        if (chunk < 0) {
+            return -1;
+        }
+        return section != null ? section.getInt(snapshotIdsAt + 4L * chunk) : chunkSnapshotIds[chunk];
+    }
+
+    public synchronized int length() {
+        return start + retainedLength();
+    }
+
+    // Portion [from, to) de la sortie, bornée à ce qui a déjà été écrit et à ce qui n'a pas été retiré
+    public synchronized String substring(int from, int to) {
+        int end = Math.min(to - start, retainedLength());
+        int begin = Math.max(0, Math.min(from - start, end));
+        if (end <= 0) {
+            return "";
+        }
+        return section != null ? section.getChars(textAt + 2L * begin, end - begin) : text.substring(begin, end);
+    }
+
+    // Retire la sortie écrite avant le snapshot snapshotId (morceaux estampillés d'un id inférieur)
+    synchronized void discardBefore(int snapshotId) {
+        checkWritable();
+        int chunk = 0;
+        while (chunk < chunkCount && chunkSnapshotIds[chunk] < snapshotId) {
+            chunk++;
+        }
+        if (chunk == 0) return;
+        int end = chunk < chunkCount ? chunkOffsets[chunk] : start + text.length();
+        text.delete(0, end - start);
+        start = end;
+        chunkCount -= chunk;
+        System.arraycopy(chunkOffsets, chunk, chunkOffsets, 0, chunkCount);
+        System.arraycopy(chunkSnapshotIds, chunk, chunkSnapshotIds, 0, chunkCount);
+    }
+
+    // Offset du premier caractère encore disponible (0 tant que rien n'a été retiré)
+    public synchronized int firstOffset() {
+        return start;
+    }
+
+    // Caractères encore gardés, en mémoire ou dans le fichier de trace
+    synchronized int retainedLength() {
+        return section != null ? mappedLength : text.length();
+    }
+
+    public String prefix(int offset) {
+        return substring(0, offset);
+    }
+
+    // Estampilles des morceaux puis texte en UTF-16 : l'offset d'un caractère donne sa position dans le fichier
+    synchronized void writeTo(DataOutputStream out) throws IOException {
+        checkWritable();
+        out.writeInt(start);
+        out.writeInt(text.length());
+        out.writeInt(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            out.writeInt(chunkOffsets[i]);
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            out.writeInt(chunkSnapshotIds[i]);
+        }
+        for (int from = 0; from < text.length(); from += 8192) {
+            out.writeChars(text.substring(from, Math.min(from + 8192, text.length())));
+        }
+    }
+
+    static OutputLog readFrom(TraceSection section) {
+        return new OutputLog(section);
+    }
+
+    private void checkWritable() {
+        if (section != null) {
+            throw new IllegalStateException("Sortie relue depuis un fichier de trace : lecture seule");
+        }
+    }
+}
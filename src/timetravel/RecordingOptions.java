@@ -0,0 +1,185 @@
+package timetravel;
+
+import com.sun.jdi.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Réglages de l'enregistrement choisis au lancement du débogueur.
+ * LINE : un snapshot par ligne exécutée (STEP_LINE / STEP_INTO), comme à l'origine.
+ * METHOD : un snapshot par entrée et par sortie de méthode (MethodEntryRequest / MethodExitRequest),
+ * avec le pas à pas ligne par ligne réservé aux méthodes listées dans lineLevelMethods.
+ * Dans les deux modes, seul le code dans la portée (RecordingScope) est enregistré, et par défaut
+ * tous les threads démarrés après le chargement de la classe principale le sont aussi.
+ * L'indexation des snapshots se fait hors du chemin critique, par une file de indexQueueCapacity tâches
+ * (0 : indexation synchrone, pendant que le thread cible est suspendu).
+ * memoryBudget borne la chronologie gardée en mémoire (voir MemoryBudget).
+ * Avec des déclencheurs (triggers), l'enregistrement est armé : seuls les preTriggerSteps derniers pas sont gardés
+ * jusqu'au premier déclencheur atteint, puis tout est enregistré (dans la limite de memoryBudget).
+ * windowMillis borne la durée de l'enregistrement (0 : jusqu'à la fin de la VM cible ou un arrêt demandé).
+ * traceFile, s'il est donné, reçoit la chronologie à la fin de l'enregistrement (voir TraceFile).
+ */
+public class RecordingOptions {
+    public enum Mode { LINE, METHOD }
+
+    public static final int DEFAULT_PRE_TRIGGER_STEPS = 10_000;
+
+    private Mode mode;
+    // Motifs au format de RecordingScope : "Classe.methode", "paquet.Classe.methode", "*.methode"
+    private final Set<String> lineLevelMethods;
+    private final List<Pattern> lineLevelPatterns;
+    private final RecordingScope scope;
+    // false : seul le thread qui charge la classe principale est enregistré
+    private boolean allThreads;
+    private int indexQueueCapacity;
+    private MemoryBudget memoryBudget;
+    private final List<RecordingTrigger> triggers;
+    private int preTriggerSteps;
+    private long windowMillis;
+    private Path traceFile;
+
+    public RecordingOptions() {
+        this.mode = Mode.LINE;
+        this.lineLevelMethods = new LinkedHashSet<>();
+        this.lineLevelPatterns = new ArrayList<>();
+        this.scope = new RecordingScope();
+        this.allThreads = true;
+        this.indexQueueCapacity = CapturePipeline.DEFAULT_CAPACITY;
+        this.memoryBudget = MemoryBudget.UNLIMITED;
+        this.triggers = new ArrayList<>();
+        this.preTriggerSteps = DEFAULT_PRE_TRIGGER_STEPS;
+    }
+
+    // Arguments de la ligne de commande : --mode=line|method, --lines=Classe.methode,autre,
+    // --include=com.app.*,Point, --exclude=*.toString, --threads=all|main, --queue=N,
+    // --budget=100000|64mb (débordement sur disque), --flight-recorder (les snapshots hors budget sont supprimés)
+    // --trigger=at:Fichier.java:42|entry:Classe.methode|exception[:Type]|var:nom>=5 (répétable) avec --pre-trigger=N,
+    // --window=10s|500ms|2m (durée de l'enregistrement), et --save=trace.bin (chronologie écrite dans un fichier de trace, rouvert ensuite avec --open=trace.bin)
+    public static RecordingOptions fromArgs(String[] args) {
+        RecordingOptions options = new RecordingOptions();
+        for (String arg : args) {
+            if (arg.startsWith("--mode=")) {
+                options.setMode(Mode.valueOf(arg.substring("--mode=".length()).toUpperCase()));
+            } else if (arg.startsWith("--lines=")) {
+                for (String method : splitList(arg.substring("--lines=".length()))) {
+                    options.addLineLevelMethod(method);
+                }
+            } else if (arg.startsWith("--include=")) {
+                for (String pattern : splitList(arg.substring("--include=".length()))) {
+                    options.getScope().include(pattern);
+                }
+            } else if (arg.startsWith("--exclude=")) {
+                for (String pattern : splitList(arg.substring("--exclude=".length()))) {
+                    options.getScope().exclude(pattern);
+                }
+            } else if (arg.startsWith("--threads=")) {
+                String threads = arg.substring("--threads=".length());
+                if (!threads.equals("all") && !threads.equals("main")) {
+                    throw new IllegalArgumentException("--threads attend all ou main : " + threads);
+                }
+                options.setAllThreads(threads.equals("all"));
+            } else if (arg.startsWith("--queue=")) {
+                int capacity = Integer.parseInt(arg.substring("--queue=".length()));
+                if (capacity < 0) {
+                    throw new IllegalArgumentException("--queue attend une taille positive ou nulle : " + capacity);
+                }
+                options.setIndexQueueCapacity(capacity);
+            } else if (arg.startsWith("--budget=")) {
+                options.setMemoryBudget(MemoryBudget.parse(arg.substring("--budget=".length()),
+                        options.getMemoryBudget().getOverflow()));
+            } else if (arg.equals("--flight-recorder")) {
+                options.setMemoryBudget(options.getMemoryBudget().withOverflow(MemoryBudget.Overflow.DROP));
+            } else if (arg.startsWith("--trigger=")) {
+                options.addTrigger(RecordingTrigger.parse(arg.substring("--trigger=".length())));
+            } else if (arg.startsWith("--pre-trigger=")) {
+                int steps = Integer.parseInt(arg.substring("--pre-trigger=".length()));
+                if (steps < 0) {
+                    throw new IllegalArgumentException("--pre-trigger attend un nombre de pas positif ou nul : " + steps);
+                }
+                options.setPreTriggerSteps(steps);
+            } else if (arg.startsWith("--window=")) {
+                long window = parseDuration(arg.substring("--window=".length()));
+                if (window < 0) {
+                    throw new IllegalArgumentException("--window attend une durée positive : " + arg);
+                }
+                options.setWindowMillis(window);
+            } else if (arg.startsWith("--save=")) {
+                options.setTraceFile(Paths.get(arg.substring("--save=".length())));
+            } else {
+                throw new IllegalArgumentException("Option inconnue : " + arg);
+            }
+        }
+        return options;
+    }
+
+    // "500ms", "10s", "2m" ; un nombre seul est en secondes
+    private static long parseDuration(String value) {
+        String lower = value.trim().toLowerCase();
+        try {
+            if (lower.endsWith("ms")) return Long.parseLong(lower.substring(0, lower.length() - 2));
+            if (lower.endsWith("s")) return Long.parseLong(lower.substring(0, lower.length() - 1)) * 1000;
+            if (lower.endsWith("m")) return Long.parseLong(lower.substring(0, lower.length() - 1)) * 60_000;
+            return Long.parseLong(lower) * 1000;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Durée invalide : " + value);
+        }
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    // Vrai si la méthode doit être enregistrée ligne par ligne en mode METHOD ;
+    // un nom seul ("compute") désigne la méthode dans toutes les classes
+    public boolean isLineLevel(Method method) {
+        if (lineLevelMethods.contains(method.name())) return true;
+        for (Pattern pattern : lineLevelPatterns) {
+            if (RecordingScope.matches(pattern, method)) return true;
+        }
+        return false;
+    }
+
+    public Mode getMode() { return mode; }
+    public void setMode(Mode mode) { this.mode = mode; }
+    public Set<String> getLineLevelMethods() { return Collections.unmodifiableSet(lineLevelMethods); }
+    public RecordingScope getScope() { return scope; }
+    public boolean isAllThreads() { return allThreads; }
+    public void setAllThreads(boolean allThreads) { this.allThreads = allThreads; }
+    public int getIndexQueueCapacity() { return indexQueueCapacity; }
+    public void setIndexQueueCapacity(int indexQueueCapacity) { this.indexQueueCapacity = indexQueueCapacity; }
+    public MemoryBudget getMemoryBudget() { return memoryBudget; }
+    public void setMemoryBudget(MemoryBudget memoryBudget) { this.memoryBudget = memoryBudget; }
+    public List<RecordingTrigger> getTriggers() { return Collections.unmodifiableList(triggers); }
+    public void addTrigger(RecordingTrigger trigger) { triggers.add(trigger); }
+    public boolean isArmed() { return !triggers.isEmpty(); }
+    public int getPreTriggerSteps() { return preTriggerSteps; }
+    public void setPreTriggerSteps(int preTriggerSteps) { this.preTriggerSteps = preTriggerSteps; }
+    public long getWindowMillis() { return windowMillis; }
+    public void setWindowMillis(long windowMillis) { this.windowMillis = windowMillis; }
+    public Path getTraceFile() { return traceFile; }
+    public void setTraceFile(Path traceFile) { this.traceFile = traceFile; }
+
+    public void addLineLevelMethod(String method) {
+        lineLevelMethods.add(method);
+        lineLevelPatterns.add(RecordingScope.compile(method));
+    }
+
+    @Override
+    public String toString() {
+        String description = mode + ", " + scope + (allThreads ? ", tous les threads" : ", thread principal")
+                + (indexQueueCapacity > 0 ? ", indexation asynchrone (file de " + indexQueueCapacity + ")" : ", indexation synchrone")
+                + ", " + memoryBudget
+                + (triggers.isEmpty() ? "" : ", armé sur " + triggers + " avec " + preTriggerSteps + " pas avant")
+                + (windowMillis > 0 ? ", fenêtre de " + windowMillis + " ms" : "")
+                + (traceFile != null ? ", trace écrite dans " + traceFile : "");
+        return lineLevelMethods.isEmpty() ? description : description + ", lignes : " + String.join(", ", lineLevelMethods);
+    }
+}
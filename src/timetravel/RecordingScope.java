@@ -0,0 +1,108 @@
+package timetravel;
+
+import com.sun.jdi.Method;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Portée de l'enregistrement : motifs d'inclusion et d'exclusion sur les paquets, classes et méthodes.
+ * Un motif est comparé au nom de la classe (complet ou simple) et à "Classe.methode" sous les mêmes formes ;
+ * '*' remplace n'importe quelle suite de caractères ("com.app.*", "*Test", "Point.move", "*.toString").
+ * Sans inclusion, tout ce qui n'est pas exclu est enregistré ; les classes du JDK sont exclues par défaut.
+ */
+public class RecordingScope {
+    private static final String[] DEFAULT_EXCLUDES = {"java.*", "javax.*", "sun.*", "jdk.*"};
+
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final List<Pattern> includePatterns;
+    private final List<Pattern> excludePatterns;
+    // Décision mise en cache par méthode : chaque méthode n'est évaluée qu'une fois
+    private final Map<Method, Boolean> decisions;
+
+    public RecordingScope() {
+        this.includes = new ArrayList<>();
+        this.excludes = new ArrayList<>();
+        this.includePatterns = new ArrayList<>();
+        this.excludePatterns = new ArrayList<>();
+        this.decisions = new HashMap<>();
+        for (String pattern : DEFAULT_EXCLUDES) {
+            exclude(pattern);
+        }
+    }
+
+    public void include(String pattern) {
+        includes.add(pattern);
+        includePatterns.add(compile(pattern));
+        decisions.clear();
+    }
+
+    public void exclude(String pattern) {
+        excludes.add(pattern);
+        excludePatterns.add(compile(pattern));
+        decisions.clear();
+    }
+
+    // Vrai si les lignes de la méthode doivent être enregistrées
+    public boolean includes(Method method) {
+        Boolean decision = decisions.get(method);
+        if (decision == null) {
+            decision = !matchesAny(excludePatterns, method)
+                    && (includePatterns.isEmpty() || matchesAny(includePatterns, method));
+            decisions.put(method, decision);
+        }
+        return decision;
+    }
+
+    // Exclusions exprimables en filtres de classe JDI ('*' seulement en tête ou en fin) :
+    // la VM cible les saute elle-même, sans aucun événement
+    public List<String> classExclusionFilters() {
+        List<String> filters = new ArrayList<>();
+        for (String pattern : excludes) {
+            int start = pattern.startsWith("*") ? 1 : 0;
+            int end = Math.max(start, pattern.endsWith("*") ? pattern.length() - 1 : pattern.length());
+            if (pattern.substring(start, end).indexOf('*') < 0) {
+                filters.add(pattern);
+            }
+        }
+        return filters;
+    }
+
+    public List<String> getIncludes() { return Collections.unmodifiableList(includes); }
+    public List<String> getExcludes() { return Collections.unmodifiableList(excludes); }
+
+    static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : glob.split("\\*", -1)) {
+            if (regex.length() > 0) regex.append(".*");
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    // Noms comparés : paquet.Externe$Interne, Externe$Interne, Interne, chacun seul et suivi de ".methode"
+    static boolean matches(Pattern pattern, Method method) {
+        String className = method.declaringType().name();
+        String shortName = className.substring(className.lastIndexOf('.') + 1);
+        String simpleName = shortName.substring(shortName.lastIndexOf('$') + 1);
+        for (String name : new String[]{className, shortName, simpleName}) {
+            if (pattern.matcher(name).matches() || pattern.matcher(name + "." + method.name()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, Method method) {
+        for (Pattern pattern : patterns) {
+            if (matches(pattern, method)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "inclus " + (includes.isEmpty() ? "tout" : String.join(", ", includes))
+                + ", exclus " + String.join(", ", excludes);
+    }
+}
@@ -0,0 +1,143 @@
+package timetravel;
+
+import com.sun.jdi.*;
+import java.util.regex.Pattern;
+
+/**
+ * Déclencheur d'un enregistrement armé (voir RecordingOptions.getTriggers) : tant qu'aucun déclencheur n'a été
+ * atteint, seuls les derniers pas sont gardés ; une fois atteint, tout ce qui suit est enregistré.
+ * "at:testTree.java:42" ou "at:Point:42" : ligne atteinte (fichier source ou classe, motif de RecordingScope) ;
+ * "entry:Point.move" : entrée dans une méthode ; "exception" ou "exception:IllegalStateException" : exception
+ * levée dans la portée ; "var:counter>=5" : prédicat sur une variable de la frame (==, !=, <, <=, >, >=).
+ */
+public class RecordingTrigger {
+    public enum Kind { LOCATION, METHOD_ENTRY, EXCEPTION, VARIABLE }
+
+    private static final String[] OPERATORS = {"==", "!=", "<=", ">=", "<", ">"};
+
+    private final Kind kind;
+    private final String spec;
+    // LOCATION : fichier ou classe ; METHOD_ENTRY et EXCEPTION : méthode ou type d'exception (null : toutes)
+    private final Pattern pattern;
+    private final int line;
+    // VARIABLE : comparaison du texte de la valeur (nombres comparés numériquement)
+    private final String variable;
+    private final String operator;
+    private final String expected;
+
+    private RecordingTrigger(Kind kind, String spec, Pattern pattern, int line,
+                             String variable, String operator, String expected) {
+        this.kind = kind;
+        this.spec = spec;
+        this.pattern = pattern;
+        this.line = line;
+        this.variable = variable;
+        this.operator = operator;
+        this.expected = expected;
+    }
+
+    public static RecordingTrigger parse(String spec) {
+        int colon = spec.indexOf(':');
+        String type = colon < 0 ? spec : spec.substring(0, colon);
+        String argument = colon < 0 ? "" : spec.substring(colon + 1).trim();
+        switch (type) {
+            case "at": {
+                int lineSeparator = argument.lastIndexOf(':');
+                if (lineSeparator <= 0) {
+                    throw new IllegalArgumentException("Déclencheur at: attend Fichier.java:ligne ou Classe:ligne : " + spec);
+                }
+                try {
+                    return new RecordingTrigger(Kind.LOCATION, spec,
+                            RecordingScope.compile(argument.substring(0, lineSeparator)),
+                            Integer.parseInt(argument.substring(lineSeparator + 1)), null, null, null);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Numéro de ligne invalide : " + spec);
+                }
+            }
+            case "entry":
+                if (argument.isEmpty()) {
+                    throw new IllegalArgumentException("Déclencheur entry: attend Classe.methode : " + spec);
+                }
+                return new RecordingTrigger(Kind.METHOD_ENTRY, spec, RecordingScope.compile(argument), -1, null, null, null);
+            case "exception":
+                return new RecordingTrigger(Kind.EXCEPTION, spec,
+                        argument.isEmpty() ? null : RecordingScope.compile(argument), -1, null, null, null);
+            case "var":
+                for (String operator : OPERATORS) {
+                    int index = argument.indexOf(operator);
+                    if (index > 0) {
+                        return new RecordingTrigger(Kind.VARIABLE, spec, null, -1, argument.substring(0, index).trim(),
+                                operator, argument.substring(index + operator.length()).trim());
+                    }
+                }
+                throw new IllegalArgumentException("Déclencheur var: attend nom, opérateur et valeur (counter>=5) : " + spec);
+            default:
+                throw new IllegalArgumentException("Déclencheur inconnu (at:, entry:, exception, var:) : " + spec);
+        }
+    }
+
+    // Snapshot capturé pendant que le thread est suspendu ; methodEntry : premier snapshot d'un appel
+    boolean matches(ExecutionSnapshot snapshot, boolean methodEntry) {
+        switch (kind) {
+            case LOCATION:
+                return snapshot.getLineNumber() == line
+                        && (pattern.matcher(String.valueOf(snapshot.getSourceFile())).matches()
+                        || RecordingScope.matches(pattern, snapshot.getLocation().method()));
+            case METHOD_ENTRY:
+                return methodEntry && RecordingScope.matches(pattern, snapshot.getLocation().method());
+            case VARIABLE: {
+                String actual = snapshot.getVariables().get(variable);
+                return actual != null && compare(actual);
+            }
+            default:
+                return false;
+        }
+    }
+
+    // Exception levée : son type ou l'un de ses supertypes correspond au motif
+    boolean matches(ObjectReference exception) {
+        if (kind != Kind.EXCEPTION) return false;
+        if (pattern == null) return true;
+        for (ReferenceType type = exception.referenceType(); type instanceof ClassType;
+             type = ((ClassType) type).superclass()) {
+            String name = type.name();
+            String simpleName = name.substring(name.lastIndexOf('.') + 1);
+            if (pattern.matcher(name).matches() || pattern.matcher(simpleName).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean compare(String actual) {
+        String value = unquote(actual);
+        String expected = unquote(this.expected);
+        int order;
+        try {
+            order = Double.compare(Double.parseDouble(value), Double.parseDouble(expected));
+        } catch (NumberFormatException e) {
+            if (!operator.equals("==") && !operator.equals("!=")) return false;
+            order = value.equals(expected) ? 0 : 1;
+        }
+        switch (operator) {
+            case "==": return order == 0;
+            case "!=": return order != 0;
+            case "<": return order < 0;
+            case "<=": return order <= 0;
+            case ">": return order > 0;
+            default: return order >= 0;
+        }
+    }
+
+    private static String unquote(String text) {
+        return text.length() >= 2 && text.startsWith("\"") && text.endsWith("\"")
+                ? text.substring(1, text.length() - 1) : text;
+    }
+
+    public Kind getKind() { return kind; }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
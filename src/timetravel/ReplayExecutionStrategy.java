@@ -3,7 +3,6 @@ package timetravel;
 import commands.DebuggerState;
 import commands.CommandResult;
 import models.Breakpoint;
-import java.util.List;
 
 
 public class ReplayExecutionStrategy implements ExecutionStrategy {
@@ -11,10 +10,8 @@ public class ReplayExecutionStrategy implements ExecutionStrategy {
     @Override
     public CommandResult step(DebuggerState state) {
         TimelineManager tm = state.getTimelineManager();
-        int nextIndex = tm.getCurrentSnapshotIndex() + 1;
 
-        if (nextIndex < tm.getTimelineSize()) {
-            tm.travelToSnapshot(tm.getTimeline().get(nextIndex).getSnapshotId());
+        if (tm.next()) {
             return CommandResult.success("Stepped to next snapshot");
         }
 
@@ -28,50 +25,133 @@ public class ReplayExecutionStrategy implements ExecutionStrategy {
 
         if (current == null) return CommandResult.error("No current snapshot.");
 
-        int currentStackDepth = current.getCallStack().size();
-        List<ExecutionSnapshot> timeline = tm.getTimeline();
-
-        for (int i = tm.getCurrentSnapshotIndex() + 1; i < timeline.size(); i++) {
-            if (timeline.get(i).getCallStack().size() <= currentStackDepth) {
-                tm.travelToSnapshot(timeline.get(i).getSnapshotId());
-                return CommandResult.success("Replay: Stepped Over to snapshot #" + timeline.get(i).getSnapshotId());
-            }
+        int target = tm.getDepthIndex().nextAtOrAbove(current.getSnapshotId());
+        if (target >= 0 && tm.seek(target)) {
+            return CommandResult.success("Replay: Stepped Over to snapshot #" + target);
         }
         return CommandResult.error("Replay: Could not step over (end of scope or trace).");
     }
 
+    @Override
+    public CommandResult stepOut(DebuggerState state) {
+        TimelineManager tm = state.getTimelineManager();
+        ExecutionSnapshot current = tm.getCurrentSnapshot();
+
+        if (current == null) return CommandResult.error("No current snapshot.");
+
+        int target = tm.getDepthIndex().exitOf(current.getSnapshotId());
+        if (target >= 0 && tm.seek(target)) {
+            return CommandResult.success("Replay: Stepped Out to snapshot #" + target);
+        }
+        return CommandResult.error("Replay: Could not step out (method never returns in trace).");
+    }
+
+    @Override
+    public CommandResult stepBack(DebuggerState state) {
+        TimelineManager tm = state.getTimelineManager();
+
+        if (tm.previous()) {
+            return CommandResult.success("Stepped back to previous snapshot");
+        }
+
+        return CommandResult.error("Beginning of timeline reached");
+    }
+
+    @Override
+    public CommandResult stepOverBack(DebuggerState state) {
+        TimelineManager tm = state.getTimelineManager();
+        ExecutionSnapshot current = tm.getCurrentSnapshot();
+
+        if (current == null) return CommandResult.error("No current snapshot.");
+
+        int target = tm.getDepthIndex().previousAtOrAbove(current.getSnapshotId());
+        if (target >= 0 && tm.seek(target)) {
+            return CommandResult.success("Replay: Stepped Over backwards to snapshot #" + target);
+        }
+        return CommandResult.error("Replay: Could not step over backwards (beginning of trace).");
+    }
+
     @Override
     public CommandResult continueRun(DebuggerState state) {
         TimelineManager tm = state.getTimelineManager();
-        List<ExecutionSnapshot> timeline = tm.getTimeline();
-        int currentIndex = tm.getCurrentSnapshotIndex();
+        int currentId = tm.getCurrentSnapshotIndex();
 
         // Chercher le prochain breakpoint
-        for (int i = currentIndex + 1; i < timeline.size(); i++) {
-            ExecutionSnapshot snap = timeline.get(i);
-            if (isBreakpointHit(state, snap)) {
-                tm.travelToSnapshot(snap.getSnapshotId());
-                return CommandResult.success("Breakpoint hit at " +
-                        snap.getSourceFile() + ":" + snap.getLineNumber());
+        int target = -1;
+        for (Breakpoint bp : state.getBreakpoints().values()) {
+            int hit = nextStoppingHit(tm.getLocationIndex(), bp, currentId);
+            if (hit >= 0 && (target < 0 || hit < target)) {
+                target = hit;
             }
         }
 
+        if (target >= 0) {
+            if (!tm.seek(target)) {
+                return CommandResult.error("Replay: Could not reach breakpoint hit at snapshot #" + target);
+            }
+            ExecutionSnapshot snap = tm.getCurrentSnapshot();
+            return CommandResult.success("Breakpoint hit at " +
+                    snap.getSourceFile() + ":" + snap.getLineNumber());
+        }
+
         // Si pas de breakpoint, aller à la fin
-        if (timeline.size() > 0) {
-            ExecutionSnapshot last = timeline.get(timeline.size() - 1);
-            tm.travelToSnapshot(last.getSnapshotId());
+        if (tm.getTimelineSize() > 0) {
+            if (!tm.seek(tm.getTimelineSize() - 1)) {
+                return CommandResult.error("Replay: Could not reach end of execution");
+            }
             return CommandResult.success("Reached end of execution");
         }
 
         return CommandResult.error("Timeline empty");
     }
 
+    @Override
+    public CommandResult reverseContinue(DebuggerState state) {
+        TimelineManager tm = state.getTimelineManager();
+        int currentId = tm.getCurrentSnapshotIndex();
+
+        // Chercher le breakpoint précédent
+        int target = -1;
+        for (Breakpoint bp : state.getBreakpoints().values()) {
+            int hit = previousStoppingHit(tm.getLocationIndex(), bp, currentId);
+            if (hit > target) {
+                target = hit;
+            }
+        }
+
+        // Un passage dans la partie supprimée par le flight recorder ne peut plus être rejoint
+        if (target >= tm.getFirstSnapshotId()) {
+            if (!tm.seek(target)) {
+                return CommandResult.error("Replay: Could not reach breakpoint hit at snapshot #" + target);
+            }
+            ExecutionSnapshot snap = tm.getCurrentSnapshot();
+            return CommandResult.success("Breakpoint hit at " +
+                    snap.getSourceFile() + ":" + snap.getLineNumber());
+        }
+
+        // Si pas de breakpoint, revenir au début
+        if (tm.getTimelineSize() > 0) {
+            if (!tm.seek(tm.getFirstSnapshotId())) {
+                return CommandResult.error("Replay: Could not reach beginning of execution");
+            }
+            return CommandResult.success("Reached beginning of execution");
+        }
+
+        return CommandResult.error("Timeline empty");
+    }
+
     @Override
     public CommandResult setBreakpoint(DebuggerState state, String fileName, int lineNumber) {
+        return setBreakpoint(state, fileName, lineNumber, Breakpoint.BreakpointType.NORMAL, 0);
+    }
+
+    @Override
+    public CommandResult setBreakpoint(DebuggerState state, String fileName, int lineNumber,
+                                       Breakpoint.BreakpointType type, int targetCount) {
         String key = fileName + ":" + lineNumber;
-        Breakpoint bp = new Breakpoint(fileName, lineNumber);
+        Breakpoint bp = new Breakpoint(fileName, lineNumber, null, type, targetCount);
         state.getBreakpoints().put(key, bp);
-        return CommandResult.success("Replay breakpoint set at " + key);
+        return CommandResult.success("Replay breakpoint set at " + bp);
     }
 
     @Override
@@ -94,10 +174,27 @@ public class ReplayExecutionStrategy implements ExecutionStrategy {
     }
 
     /**
-     * Vérifie si un breakpoint est placé sur ce snapshot
+     * Premier passage sur la ligne du breakpoint après currentId où il s'arrête, ou -1.
+     * Le numéro de passage est la position dans la liste de l'index, d'où ONCE et ON_COUNT.
      */
-    private boolean isBreakpointHit(DebuggerState state, ExecutionSnapshot snap) {
-        String key = snap.getSourceFile() + ":" + snap.getLineNumber();
-        return state.getBreakpoints().containsKey(key);
+    private int nextStoppingHit(LocationIndex index, Breakpoint bp, int currentId) {
+        int hit = Math.max(index.countHitsBefore(bp.getFileName(), bp.getLineNumber(), currentId + 1),
+                bp.getFirstStoppingHit());
+        if (hit > bp.getLastStoppingHit()) {
+            return -1;
+        }
+        return index.hitAt(bp.getFileName(), bp.getLineNumber(), hit);
+    }
+
+    /**
+     * Dernier passage sur la ligne du breakpoint avant currentId où il s'arrête, ou -1
+     */
+    private int previousStoppingHit(LocationIndex index, Breakpoint bp, int currentId) {
+        int hit = Math.min(index.countHitsBefore(bp.getFileName(), bp.getLineNumber(), currentId) - 1,
+                bp.getLastStoppingHit());
+        if (hit < bp.getFirstStoppingHit()) {
+            return -1;
+        }
+        return index.hitAt(bp.getFileName(), bp.getLineNumber(), hit);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package timetravel;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Tranches de chronologie gardées hors du tas (fichier de débordement ou fichier de trace),
+ * relues à la demande par ColumnarTimelineStore, qui les ferme avec la chronologie.
+ */
+interface SegmentSource extends Closeable {
+    TimelineSegment read(long position, int length) throws IOException;
+}
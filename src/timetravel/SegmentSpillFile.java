@@ -0,0 +1,57 @@
+package timetravel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Fichier temporaire où ColumnarTimelineStore déverse les tranches anciennes quand le budget mémoire est dépassé.
+ * Les tranches y sont écrites à la suite sous leur forme binaire (TimelineSegment.writeTo) et relues à la demande.
+ */
+class SegmentSpillFile implements SegmentSource {
+    private final Path path;
+    private final FileChannel channel;
+    private long end;
+
+    SegmentSpillFile() throws IOException {
+        this.path = Files.createTempFile("timeline", ".segments");
+        this.path.toFile().deleteOnExit();
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    // Écrit la tranche en fin de fichier et renvoie sa position
+    long write(TimelineSegment segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(segment.encodedSize());
+        segment.writeTo(buffer);
+        buffer.flip();
+        long position = end;
+        while (buffer.hasRemaining()) {
+            end += channel.write(buffer, end);
+        }
+        return position;
+    }
+
+    @Override
+    public TimelineSegment read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Tranche tronquée dans " + path);
+            }
+        }
+        buffer.flip();
+        return TimelineSegment.readFrom(buffer);
+    }
+
+    long length() {
+        return end;
+    }
+
+    // Le canal est ouvert avec DELETE_ON_CLOSE : le fichier disparaît avec lui
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
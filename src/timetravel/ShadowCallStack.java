@@ -0,0 +1,133 @@
+package timetravel;
+
+import com.sun.jdi.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Pile d'appels fantôme tenue par l'enregistreur, indexée par profondeur (bas de pile en 0).
+ * À chaque pas, les frames du bas identiques au pas précédent sont reprises telles quelles ;
+ * seules celles au-dessus du premier changement sont recherchées dans l'arbre des FrameNode.
+ */
+public class ShadowCallStack {
+    private final FrameNode root;
+    // Tous les noeuds créés, indexés par id (la racine a l'id 0)
+    private final List<FrameNode> nodes;
+    private FrameNode[] frames;
+    private int depth;
+
+    public ShadowCallStack() {
+        this.root = FrameNode.root();
+        this.nodes = new ArrayList<>();
+        this.nodes.add(root);
+        this.frames = new FrameNode[64];
+    }
+
+    // Pile d'un autre thread : même arbre de FrameNode (et mêmes ids), pile courante propre
+    public ShadowCallStack(ShadowCallStack shared) {
+        this.root = shared.root;
+        this.nodes = shared.nodes;
+        this.frames = new FrameNode[64];
+    }
+
+    // Met la pile à jour depuis les frames JDI (sommet en premier) et renvoie le noeud du sommet
+    public FrameNode update(List<StackFrame> stackFrames, MethodMetadataCache metadataCache) {
+        int newDepth = stackFrames.size();
+        if (newDepth > frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(newDepth, frames.length * 2));
+        }
+
+        FrameNode node = root;
+        boolean shared = true;
+        for (int i = 0; i < newDepth; i++) {
+            Location location = stackFrames.get(newDepth - 1 - i).location();
+            FrameNode known = i < depth ? frames[i] : null;
+            if (shared && known != null && known.matches(location)) {
+                node = known;
+            } else {
+                shared = false;
+                // Les noeuds sont lus par le thread d'indexation et l'interface pendant l'enregistrement
+                synchronized (nodes) {
+                    node = node.child(metadataCache.get(location.method()), location.lineNumber(), nodes.size());
+                    if (node.getId() == nodes.size()) {
+                        nodes.add(node);
+                    }
+                }
+            }
+            frames[i] = node;
+        }
+        Arrays.fill(frames, newDepth, Math.max(depth, newDepth), null);
+        depth = newDepth;
+        return node;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public FrameNode getNode(int id) {
+        synchronized (nodes) {
+            return nodes.get(id);
+        }
+    }
+
+    public int getNodeCount() {
+        synchronized (nodes) {
+            return nodes.size();
+        }
+    }
+
+    // Arbre des frames : les méthodes distinctes, puis chaque noeud (appelant, méthode, ligne) dans l'ordre des ids
+    void writeTo(DataOutputStream out) throws IOException {
+        synchronized (nodes) {
+            Map<MethodMetadataCache.MethodMetadata, Integer> methodIndexes = new IdentityHashMap<>();
+            List<MethodMetadataCache.MethodMetadata> methods = new ArrayList<>();
+            for (int id = 1; id < nodes.size(); id++) {
+                MethodMetadataCache.MethodMetadata method = nodes.get(id).getMethod();
+                if (!methodIndexes.containsKey(method)) {
+                    methodIndexes.put(method, methods.size());
+                    methods.add(method);
+                }
+            }
+            out.writeInt(methods.size());
+            for (MethodMetadataCache.MethodMetadata method : methods) {
+                TraceFile.writeString(out, method.getClassName());
+                TraceFile.writeString(out, method.getMethodName());
+                TraceFile.writeString(out, method.findSourceName());
+                out.writeInt(method.getArgumentNames().size());
+                for (String argument : method.getArgumentNames()) {
+                    TraceFile.writeString(out, argument);
+                }
+            }
+            out.writeInt(nodes.size());
+            for (int id = 1; id < nodes.size(); id++) {
+                FrameNode node = nodes.get(id);
+                out.writeInt(node.getParent().getId());
+                out.writeInt(methodIndexes.get(node.getMethod()));
+                out.writeInt(node.getLineNumber());
+            }
+        }
+    }
+
+    static ShadowCallStack readFrom(TraceSection section, MethodMetadataCache metadataCache) {
+        int methodCount = section.getInt();
+        List<MethodMetadataCache.MethodMetadata> methods = new ArrayList<>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            String className = section.getString();
+            String methodName = section.getString();
+            String sourceName = section.getString();
+            List<String> arguments = new ArrayList<>();
+            for (int a = section.getInt(); a > 0; a--) {
+                arguments.add(section.getString());
+            }
+            methods.add(metadataCache.restore(className, methodName, sourceName, arguments));
+        }
+        ShadowCallStack stack = new ShadowCallStack();
+        int nodeCount = section.getInt();
+        for (int id = 1; id < nodeCount; id++) {
+            FrameNode parent = stack.nodes.get(section.getInt());
+            stack.nodes.add(parent.child(methods.get(section.getInt()), section.getInt(), id));
+        }
+        return stack;
+    }
+}
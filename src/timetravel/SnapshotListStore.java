@@ -0,0 +1,59 @@
+package timetravel;
+
+import java.util.*;
+
+/**
+ * Stockage direct des objets ExecutionSnapshot capturés (miroirs JDI compris).
+ */
+public class SnapshotListStore implements TimelineStore {
+    private final List<ExecutionSnapshot> snapshots;
+
+    public SnapshotListStore() {
+        this.snapshots = new ArrayList<>();
+    }
+
+    @Override
+    public void append(ExecutionSnapshot snapshot) {
+        snapshots.add(snapshot);
+    }
+
+    @Override
+    public ExecutionSnapshot get(int snapshotId) {
+        return snapshots.get(snapshotId);
+    }
+
+    @Override
+    public int size() {
+        return snapshots.size();
+    }
+
+    @Override
+    public int firstSnapshotId() {
+        return 0;
+    }
+
+    @Override
+    public int getLineNumber(int snapshotId) {
+        return snapshots.get(snapshotId).getLineNumber();
+    }
+
+    @Override
+    public int getMethodId(int snapshotId) {
+        return snapshots.get(snapshotId).getMethodId();
+    }
+
+    @Override
+    public int getStackDepth(int snapshotId) {
+        return snapshots.get(snapshotId).getStackDepth();
+    }
+
+    @Override
+    public int getOutputOffset(int snapshotId) {
+        return snapshots.get(snapshotId).getOutputOffset();
+    }
+
+    @Override
+    public int getThreadId(int snapshotId) {
+        return snapshots.get(snapshotId).getThreadId();
+    }
+}
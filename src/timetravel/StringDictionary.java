@@ -0,0 +1,59 @@
+package timetravel;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Dictionnaire chaîne <-> id entier dense (ids attribués dans l'ordre d'apparition).
+ */
+public class StringDictionary {
+    private final Map<String, Integer> ids;
+    private final List<String> values;
+
+    public StringDictionary() {
+        this.ids = new HashMap<>();
+        this.values = new ArrayList<>();
+    }
+
+    // Id de la chaîne, attribué au premier appel
+    public int idOf(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    // Id de la chaîne si elle est connue, -1 sinon
+    public int find(String value) {
+        Integer id = ids.get(value);
+        return id != null ? id : -1;
+    }
+
+    public String get(int id) {
+        return values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    // Chaînes dans l'ordre des ids : la relecture redonne les mêmes ids
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            TraceFile.writeString(out, value);
+        }
+    }
+
+    static StringDictionary readFrom(TraceSection section) {
+        StringDictionary dictionary = new StringDictionary();
+        int count = section.getInt();
+        for (int i = 0; i < count; i++) {
+            dictionary.idOf(section.getString());
+        }
+        return dictionary;
+    }
+}
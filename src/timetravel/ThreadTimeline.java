@@ -0,0 +1,58 @@
+package timetravel;
+
+/**
+ * Sous-chronologie d'un thread enregistré : ses snapshots sont ceux de la chronologie globale
+ * (même séquence d'ids) qui portent son id de thread. Garde la pile fantôme du thread et
+ * l'index de profondeur servant aux step over / step out du replay dans ce thread.
+ */
+public class ThreadTimeline {
+    private final int threadId;
+    private final long uniqueId;
+    private final String name;
+    private final ShadowCallStack shadowStack;
+    private final DepthIndex depthIndex;
+
+    ThreadTimeline(int threadId, long uniqueId, String name, ShadowCallStack shadowStack) {
+        this(threadId, uniqueId, name, shadowStack, new DepthIndex());
+    }
+
+    // Sous-chronologie relue depuis un fichier de trace
+    ThreadTimeline(int threadId, long uniqueId, String name, ShadowCallStack shadowStack, DepthIndex depthIndex) {
+        this.threadId = threadId;
+        this.uniqueId = uniqueId;
+        this.name = name;
+        this.shadowStack = shadowStack;
+        this.depthIndex = depthIndex;
+    }
+
+    void record(ExecutionSnapshot snapshot) {
+        depthIndex.record(snapshot.getSnapshotId(), snapshot.getStackDepth());
+    }
+
+    // Début de la chronologie supprimé : les pas d'id inférieur sortent de l'index de profondeur
+    void discardBefore(int snapshotId) {
+        depthIndex.discardBefore(snapshotId);
+    }
+
+    // Snapshot suivant (ou précédent) du même thread, -1 en bout de sous-chronologie
+    public int nextSnapshotId(int snapshotId) {
+        return depthIndex.idAt(depthIndex.countBefore(snapshotId + 1));
+    }
+
+    public int previousSnapshotId(int snapshotId) {
+        return depthIndex.idAt(depthIndex.countBefore(snapshotId) - 1);
+    }
+
+    public int getThreadId() { return threadId; }
+    public long getUniqueId() { return uniqueId; }
+    public String getName() { return name; }
+    public int size() { return depthIndex.size(); }
+    public int snapshotIdAt(int step) { return depthIndex.idAt(step); }
+    public ShadowCallStack getShadowStack() { return shadowStack; }
+    public DepthIndex getDepthIndex() { return depthIndex; }
+
+    @Override
+    public String toString() {
+        return String.format("Thread #%d \"%s\" (%d snapshots)", threadId, name, size());
+    }
+}
@@ -1,102 +1,286 @@
 package timetravel;
 
 import com.sun.jdi.*;
+import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 
-public class TimelineManager {
-    private List<ExecutionSnapshot> timeline;
+public class TimelineManager implements Closeable {
+    // Modification dans un fichier de trace : snapshot, ancienne et nouvelle valeur (tag, bits), ligne,
+    // méthode (id dans un dictionnaire) et horodatage
+    private static final int MODIFICATION_SIZE = 4 + 9 + 9 + 4 + 4 + 8;
+
+    private TimelineStore timeline;
     private int currentSnapshotIndex;
     private int nextSnapshotId;
-    private Map<String, VariableTracker> allVariableTrackers;
-    private List<MethodCallRecord> allMethodCalls;
-    private StringBuilder programOutput;
+    private StringDictionary variableNames;
+    private Map<String, List<VariableTracker>> trackersByName;
+    private int variablesWithModificationsCount;
+    private MethodCallIndex methodCallIndex;
+    private long totalJdwpRoundTrips;
+    private OutputLog outputLog;
+    // Lu par les threads de lecture de la sortie du processus cible
+    private volatile int lastRecordedSnapshotId = -1;
     private TimeTravelCallback callback;
-    private String lastMethodSignature = null;
-    private int lastStackDepth = 0;
-
+    private LocationIndex locationIndex;
+    private MethodMetadataCache metadataCache;
+    // Arbre des FrameNode partagé par les piles de tous les threads
+    private ShadowCallStack frameNodes;
+    private ValueTable values;
+    // Threads enregistrés, indexés par id dense ; les ids de snapshots restent une séquence globale.
+    // Ajoutés par l'étape de capture, lus par l'étape d'indexation (voir CapturePipeline)
+    private List<ThreadState> threads;
+    private Map<Long, ThreadState> threadsByUniqueId;
+    // Premier id encore couvert par les index (lignes, profondeur, appels, historiques, sortie) : ils suivent
+    // le début de la chronologie quand le flight recorder en supprime une tranche
+    private int indexedFromSnapshotId;
 
 
     public interface TimeTravelCallback {
         void restoreSnapshot(ExecutionSnapshot snapshot);
     }
 
+    // Par défaut la chronologie est stockée en colonnes (ColumnarTimelineStore)
     public TimelineManager() {
-        this.timeline = new ArrayList<>();
+        this(true);
+    }
+
+    // columnarStore à false : garde les objets ExecutionSnapshot capturés tels quels (SnapshotListStore)
+    public TimelineManager(boolean columnarStore) {
         this.currentSnapshotIndex = -1;
         this.nextSnapshotId = 0;
-        this.allVariableTrackers = new HashMap<>();
-        this.allMethodCalls = new ArrayList<>();
-        this.programOutput = new StringBuilder();
+        this.variableNames = new StringDictionary();
+        this.trackersByName = new LinkedHashMap<>();
+        this.methodCallIndex = new MethodCallIndex();
+        this.outputLog = new OutputLog();
+        this.locationIndex = new LocationIndex();
+        this.metadataCache = new MethodMetadataCache();
+        this.frameNodes = new ShadowCallStack();
+        this.values = new ValueTable();
+        this.threads = new CopyOnWriteArrayList<>();
+        this.threadsByUniqueId = new HashMap<>();
+        this.timeline = columnarStore
+                ? new ColumnarTimelineStore(frameNodes, outputLog, values)
+                : new SnapshotListStore();
+    }
+
+    // Enregistrement relu depuis un fichier de trace (voir TraceFile) ; threads et historiques suivent par readTimelineFrom
+    TimelineManager(ColumnarTimelineStore timeline, ShadowCallStack frameNodes, OutputLog outputLog, ValueTable values,
+                    MethodMetadataCache metadataCache, LocationIndex locationIndex, MethodCallIndex methodCallIndex) {
+        this.currentSnapshotIndex = -1;
+        this.nextSnapshotId = timeline.size();
+        this.variableNames = new StringDictionary();
+        this.trackersByName = new LinkedHashMap<>();
+        this.methodCallIndex = methodCallIndex;
+        this.outputLog = outputLog;
+        this.locationIndex = locationIndex;
+        this.metadataCache = metadataCache;
+        this.frameNodes = frameNodes;
+        this.values = values;
+        this.threads = new CopyOnWriteArrayList<>();
+        this.threadsByUniqueId = new HashMap<>();
+        this.timeline = timeline;
+        this.lastRecordedSnapshotId = timeline.size() - 1;
+        this.indexedFromSnapshotId = timeline.firstSnapshotId();
     }
 
-    // Crée un snapshot complet de l'état actuel et l'ajoute à la chronologie
+    // Écrit l'enregistrement terminé dans un fichier de trace, rouvrable sans la VM cible
+    public void save(Path path) throws IOException {
+        TraceFile.write(this, path);
+    }
+
+    public static TimelineManager open(Path path) throws IOException {
+        return TraceFile.open(path);
+    }
+
+    // Fin de l'enregistrement ou du replay : libère le fichier de débordement ou le fichier de trace rouvert
+    @Override
+    public void close() throws IOException {
+        timeline.close();
+    }
+
+    // Crée un snapshot complet de l'état actuel et l'ajoute à la chronologie (capture puis indexation)
     public ExecutionSnapshot recordSnapshot(Location location, ThreadReference thread) {
+        ExecutionSnapshot snapshot = captureSnapshot(location, thread);
+        if (snapshot != null) {
+            indexSnapshot(snapshot);
+        }
+        return snapshot;
+    }
+
+    // Étape de capture, sur le thread des événements JDI pendant que le thread cible est suspendu :
+    // seules les lectures JDWP (pile, valeurs) sont faites ici ; le snapshot doit ensuite passer par indexSnapshot
+    public ExecutionSnapshot captureSnapshot(Location location, ThreadReference thread) {
         try {
+            ThreadState threadState = threadState(thread);
             ExecutionSnapshot snapshot = new ExecutionSnapshot(
-                    nextSnapshotId++, location, thread, programOutput.toString());
+                    nextSnapshotId, location, thread, threadState.timeline.getThreadId(), outputLog,
+                    metadataCache, threadState.timeline.getShadowStack(), values);
 
-            timeline.add(snapshot);
-            currentSnapshotIndex = timeline.size() - 1;
-            autoTrackVariables(snapshot);
-            recordMethodCallIfNew(snapshot);
+            // L'id n'est consommé qu'une fois la capture réussie : id == position dans la chronologie
+            nextSnapshotId++;
+            totalJdwpRoundTrips += snapshot.getJdwpRoundTrips();
+            lastRecordedSnapshotId = snapshot.getSnapshotId();
             return snapshot;
         } catch (Exception e) {
             return null;
         }
     }
 
-    public void appendProgramOutput(String text) {
-        programOutput.append(text);
+    // Valeur de retour d'un MethodExitEvent, lue tant que le thread est suspendu ; l'appel est fermé à l'indexation
+    public void captureReturnValue(ExecutionSnapshot exitSnapshot, Value returnValue) {
+        byte tag = ValueTable.tagOf(returnValue);
+        if (values.isNew(returnValue, tag)) {
+            totalJdwpRoundTrips++;
+        }
+        exitSnapshot.setReturnValue(tag, values.bitsOf(returnValue, tag));
     }
 
-    private String extractMethodContext(ExecutionSnapshot snapshot) {
-        if (snapshot.getCallStack() == null || snapshot.getCallStack().isEmpty()) {
-            return snapshot.getMethodName();
+    // Étape d'indexation, sans accès à la VM cible : deltas de variables, chronologie, index, trackers
+    // et arbre des appels. Les snapshots capturés doivent y passer un par un, dans l'ordre de leurs ids
+    public void indexSnapshot(ExecutionSnapshot snapshot) {
+        ThreadState threadState = threads.get(snapshot.getThreadId());
+        VariableValues variables = snapshot.getVariableValues();
+        encodeVariables(threadState, snapshot, variables);
+
+        timeline.append(snapshot);
+        threadState.timeline.record(snapshot);
+        locationIndex.record(snapshot.getSnapshotId(), snapshot.getSourceFile(), snapshot.getLineNumber());
+        currentSnapshotIndex = timeline.size() - 1;
+        autoTrackVariables(threadState, snapshot, variables);
+        MethodCallRecord call = methodCallIndex.record(snapshot, snapshot.getMethodContext());
+        if (call != null) {
+            call.setArguments(argumentsOf(snapshot, variables), values);
         }
-        String fullFrame = snapshot.getCallStack().get(0);
-        int ligneIndex = fullFrame.indexOf(" ligne ");
-        if (ligneIndex > 0) {
-            return fullFrame.substring(0, ligneIndex).trim();
+        if (snapshot.hasReturnValue()) {
+            methodCallIndex.recordReturn(snapshot, snapshot.getReturnTag(), snapshot.getReturnBits(), values);
+        }
+        // Les index ne sont élagués qu'une tranche à la fois, comme la chronologie
+        if (timeline.firstSnapshotId() - indexedFromSnapshotId >= Math.max(1, getSegmentSize())) {
+            discardIndicesBefore(timeline.firstSnapshotId());
+        }
+    }
+
+    // Retire des index tout ce qui précède snapshotId, qui n'est plus dans la chronologie
+    private void discardIndicesBefore(int snapshotId) {
+        indexedFromSnapshotId = snapshotId;
+        locationIndex.discardBefore(snapshotId);
+        for (ThreadState state : threads) {
+            state.timeline.discardBefore(snapshotId);
         }
-        return fullFrame;
+        methodCallIndex.discardBefore(snapshotId);
+        outputLog.discardBefore(snapshotId);
+        discardHistoryBefore(snapshotId);
     }
 
-    // Analyse les variables du snapshot pour détecter et enregistrer tout changement de valeur
-    private void autoTrackVariables(ExecutionSnapshot snapshot) {
-        Map<String, String> vars = snapshot.getVariables();
-        String methodContext = extractMethodContext(snapshot);
+    private synchronized void discardHistoryBefore(int snapshotId) {
+        for (List<VariableTracker> trackers : trackersByName.values()) {
+            for (VariableTracker tracker : trackers) {
+                tracker.discardBefore(snapshotId);
+            }
+        }
+    }
 
-        for (Map.Entry<String, String> entry : vars.entrySet()) {
-            String varName = entry.getKey();
-            String varValue = entry.getValue();
-            String uniqueKey = varName + "@" + methodContext;
+    // Thread vu pour la première fois : son nom n'est lu qu'une fois sur la VM cible
+    private ThreadState threadState(ThreadReference thread) {
+        ThreadState state = threadsByUniqueId.get(thread.uniqueID());
+        if (state == null) {
+            state = new ThreadState(new ThreadTimeline(threads.size(), thread.uniqueID(), thread.name(),
+                    new ShadowCallStack(frameNodes)));
+            threads.add(state);
+            threadsByUniqueId.put(thread.uniqueID(), state);
+        }
+        return state;
+    }
 
-            if (!allVariableTrackers.containsKey(uniqueKey)) {
-                allVariableTrackers.put(uniqueKey, new VariableTracker(varName, varValue, methodContext));
-                allVariableTrackers.get(uniqueKey).initializeVariable(snapshot);
+    // Au premier snapshot d'un appel, les paramètres sont visibles parmi les variables de la frame
+    private VariableValues argumentsOf(ExecutionSnapshot snapshot, VariableValues variables) {
+        List<String> names = snapshot.getCallStackTop().getMethod().getArgumentNames();
+        VariableValues arguments = new VariableValues(names.size());
+        for (String name : names) {
+            int index = variables.indexOf(name);
+            if (index >= 0) {
+                arguments.put(name, variables.tagAt(index), variables.bitsAt(index));
             }
-            allVariableTrackers.get(uniqueKey).checkForModification(varValue, snapshot);
         }
+        return arguments;
     }
 
-    // Enregistre un nouvel appel de méthode
-    private void recordMethodCallIfNew(ExecutionSnapshot snapshot) {
-        if (snapshot.getCallStack() == null) return;
-        int currentStackDepth = snapshot.getCallStack().size();
-        String currentMethodSignature = extractMethodContext(snapshot);
-        if (lastMethodSignature == null || currentStackDepth > lastStackDepth) {
-            MethodCallRecord call = new MethodCallRecord(
-                    snapshot.getSnapshotId(),
-                    snapshot.getMethodName(), //
-                    snapshot.getSourceFile(),
-                    snapshot.getLineNumber(),
-                    currentMethodSignature
-            );
-            allMethodCalls.add(call);
+    public void appendProgramOutput(String text) {
+        outputLog.append(text, lastRecordedSnapshotId);
+    }
+
+    public OutputLog getOutputLog() {
+        return outputLog;
+    }
+
+    // Stocke les variables en delta par rapport au snapshot précédent de la même frame,
+    // avec un keyframe complet selon la politique d'intervalle de KeyframePolicy
+    private void encodeVariables(ThreadState threadState, ExecutionSnapshot snapshot, VariableValues variables) {
+        int depth = snapshot.getStackDepth();
+        int methodId = snapshot.getMethodId();
+        List<FrameVariables> frameVariables = threadState.frameVariables;
+
+        while (frameVariables.size() > depth) {
+            frameVariables.remove(frameVariables.size() - 1);
+        }
+
+        FrameVariables previous = depth > 0 && frameVariables.size() == depth
+                ? frameVariables.get(depth - 1) : null;
+        int chainLength = 0;
+        int accumulatedChanges = 0;
+        if (previous != null && previous.methodId == methodId) {
+            VariableDelta delta = VariableDelta.between(previous.variables, variables);
+            if (!KeyframePolicy.needsKeyframe(previous.chainLength + 1,
+                    previous.accumulatedChanges + delta.size(), variables.size())) {
+                snapshot.encodeAsDelta(previous.snapshot, delta);
+                chainLength = previous.chainLength + 1;
+                accumulatedChanges = previous.accumulatedChanges + delta.size();
+            }
+        }
 
-            lastMethodSignature = currentMethodSignature;
+        if (depth == 0) return;
+        while (frameVariables.size() < depth) {
+            frameVariables.add(null);
         }
-        lastStackDepth = currentStackDepth;
+        frameVariables.set(depth - 1, new FrameVariables(
+                methodId, snapshot, variables, chainLength, accumulatedChanges));
+    }
+
+    // Analyse les variables du snapshot pour détecter et enregistrer tout changement de valeur.
+    // Sur le thread d'indexation : les historiques ne sont lus que sous ce même verrou, par copie
+    private synchronized void autoTrackVariables(ThreadState threadState, ExecutionSnapshot snapshot, VariableValues vars) {
+        int methodId = snapshot.getMethodId();
+        for (int i = 0; i < vars.size(); i++) {
+            String varName = vars.nameAt(i);
+            byte tag = vars.tagAt(i);
+            long bits = vars.bitsAt(i);
+            int nameId = variableNames.idOf(varName);
+
+            VariableTracker tracker = threadState.tracker(methodId, nameId);
+            if (tracker == null) {
+                tracker = new VariableTracker(varName, tag, bits, snapshot.getMethodContext(),
+                        threadState.timeline.getThreadId(), methodId);
+                tracker.initializeVariable(snapshot);
+                threadState.putTracker(methodId, nameId, tracker);
+                indexTrackerByName(tracker);
+            }
+            tracker.checkForModification(tag, bits, snapshot);
+        }
+    }
+
+    // Index secondaire nom -> trackers ; chaque tracker naît avec sa modification initiale,
+    // donc un nouveau nom compte immédiatement parmi les variables modifiées
+    private void indexTrackerByName(VariableTracker tracker) {
+        List<VariableTracker> trackers = trackersByName.get(tracker.getVariableName());
+        if (trackers == null) {
+            trackers = new ArrayList<>(1);
+            trackersByName.put(tracker.getVariableName(), trackers);
+            variablesWithModificationsCount++;
+        }
+        trackers.add(tracker);
     }
 
     // Récupère l'historique des modifications d'une variable jusqu'au point actuel dans le temps
@@ -104,167 +288,258 @@ public class TimelineManager {
         if (currentSnapshotIndex < 0) {
             return new ArrayList<>();
         }
-        ExecutionSnapshot currentSnapshot = timeline.get(currentSnapshotIndex);
-        return getVariableHistoryUpToSnapshot(variableName, currentSnapshot);
+        return variableHistoryUpTo(variableName, timeline.getThreadId(currentSnapshotIndex),
+                timeline.getMethodId(currentSnapshotIndex), currentSnapshotIndex);
     }
 
     public List<VariableModification> getVariableHistoryUpToSnapshot(String variableName, ExecutionSnapshot upToSnapshot) {
-        String methodContext = extractMethodContext(upToSnapshot);
-        String uniqueKey = variableName + "@" + methodContext;
-        VariableTracker tracker = allVariableTrackers.get(uniqueKey);
+        return variableHistoryUpTo(variableName, upToSnapshot.getThreadId(),
+                upToSnapshot.getMethodId(), upToSnapshot.getSnapshotId());
+    }
+
+    private synchronized List<VariableModification> variableHistoryUpTo(String variableName, int threadId, int methodId,
+                                                           int maxSnapshotId) {
+        int nameId = variableNames.find(variableName);
+        VariableTracker tracker = nameId >= 0
+                ? threads.get(threadId).tracker(methodId, nameId) : null;
 
         if (tracker == null) {
             return new ArrayList<>();
         }
 
-        List<VariableModification> filteredMods = new ArrayList<>();
-        int maxSnapshotId = upToSnapshot.getSnapshotId();
-
-        for (VariableModification mod : tracker.getModifications()) {
-
-                filteredMods.add(mod);
-
-        }
-        return filteredMods;
+        return tracker.getModificationsUpTo(maxSnapshotId);
     }
 
-    public List<VariableModification> getVariableHistory(String variableName) {
-        for (VariableTracker tracker : allVariableTrackers.values()) {
-            if (tracker.getVariableName().equals(variableName)) {
-                return tracker.getModifications();
-            }
+    public synchronized List<VariableModification> getVariableHistory(String variableName) {
+        List<VariableTracker> trackers = trackersByName.get(variableName);
+        if (trackers == null) {
+            return new ArrayList<>();
         }
-        return new ArrayList<>();
+        return trackers.get(0).getModifications();
     }
 
-    public Set<String> getAllTrackedVariableNames() {
-        Set<String> names = new HashSet<>();
-        for (VariableTracker tracker : allVariableTrackers.values()) {
-            names.add(tracker.getVariableName());
-        }
-        return names;
+    public synchronized Set<String> getAllTrackedVariableNames() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(trackersByName.keySet()));
     }
 
-    public int getTrackedVariablesWithModificationsCount() {
-        int count = 0;
-        Set<String> counted = new HashSet<>();
-
-        for (VariableTracker tracker : allVariableTrackers.values()) {
-            if (!counted.contains(tracker.getVariableName())) {
-                if (!tracker.getModifications().isEmpty()) {
-                    count++;
-                    counted.add(tracker.getVariableName());
-                }
-            }
-        }
-        return count;
+    public synchronized int getTrackedVariablesWithModificationsCount() {
+        return variablesWithModificationsCount;
     }
 
     // Récupère l'historique complet de toutes les variables jusqu'à l'instant présent
-    public Map<String, List<VariableModification>> getAllVariablesWithHistoryUpToCurrent() {
+    public synchronized Map<String, List<VariableModification>> getAllVariablesWithHistoryUpToCurrent() {
         if (currentSnapshotIndex < 0) {
             return new HashMap<>();
         }
 
-        ExecutionSnapshot currentSnapshot = timeline.get(currentSnapshotIndex);
         Map<String, List<VariableModification>> result = new HashMap<>();
-        int maxSnapshotId = currentSnapshot.getSnapshotId();
+        int maxSnapshotId = currentSnapshotIndex;
 
-        for (Map.Entry<String, VariableTracker> entry : allVariableTrackers.entrySet()) {
-            String varName = entry.getValue().getVariableName();
-            List<VariableModification> filteredHistory = new ArrayList<>();
-
-            for (VariableModification mod : entry.getValue().getModifications()) {
-                if (mod.getSnapshotId() <= maxSnapshotId) {
-                    filteredHistory.add(mod);
-                }
-            }
-
-            if (!filteredHistory.isEmpty()) {
-                if (result.containsKey(varName)) {
-                    result.get(varName).addAll(filteredHistory);
-                } else {
-                    result.put(varName, filteredHistory);
-                }
+        for (Map.Entry<String, List<VariableTracker>> entry : trackersByName.entrySet()) {
+            List<VariableModification> history = collectHistory(entry.getValue(), maxSnapshotId);
+            if (!history.isEmpty()) {
+                result.put(entry.getKey(), history);
             }
         }
         return result;
     }
 
-    public Map<String, List<VariableModification>> getAllVariablesWithHistory() {
+    public synchronized Map<String, List<VariableModification>> getAllVariablesWithHistory() {
         Map<String, List<VariableModification>> result = new HashMap<>();
 
-        for (Map.Entry<String, VariableTracker> entry : allVariableTrackers.entrySet()) {
-            String varName = entry.getValue().getVariableName();
-            List<VariableModification> history = entry.getValue().getModifications();
-
+        for (Map.Entry<String, List<VariableTracker>> entry : trackersByName.entrySet()) {
+            List<VariableModification> history = collectHistory(entry.getValue(), Integer.MAX_VALUE);
             if (!history.isEmpty()) {
-                if (result.containsKey(varName)) {
-                    result.get(varName).addAll(history);
-                } else {
-                    result.put(varName, new ArrayList<>(history));
-                }
+                result.put(entry.getKey(), history);
             }
         }
         return result;
     }
 
-    public List<MethodCallRecord> getAllMethodCallsUpToCurrent() {
-        if (currentSnapshotIndex < 0) {
-            return new ArrayList<>();
+    // Chaque tracker renvoie déjà une copie : elles ne sont fusionnées que si plusieurs méthodes partagent le nom
+    private List<VariableModification> collectHistory(List<VariableTracker> trackers, int maxSnapshotId) {
+        if (trackers.size() == 1) {
+            return trackers.get(0).getModificationsUpTo(maxSnapshotId);
         }
+        List<VariableModification> merged = new ArrayList<>();
+        for (VariableTracker tracker : trackers) {
+            merged.addAll(tracker.getModificationsUpTo(maxSnapshotId));
+        }
+        return merged;
+    }
 
-        int maxSnapshotId = timeline.get(currentSnapshotIndex).getSnapshotId();
-        List<MethodCallRecord> filtered = new ArrayList<>();
-
-        for (MethodCallRecord call : allMethodCalls) {
-
-                filtered.add(call);
-            
+    public List<MethodCallRecord> getAllMethodCallsUpToCurrent() {
+        if (currentSnapshotIndex < 0) {
+            return Collections.emptyList();
         }
-        return filtered;
+        return methodCallIndex.getCallsUpTo(currentSnapshotIndex);
     }
 
     public List<MethodCallRecord> getAllMethodCalls() {
-        return new ArrayList<>(allMethodCalls);
+        return methodCallIndex.getAllCalls();
     }
 
     public List<MethodCallRecord> getCallsToMethodUpToCurrent(String methodName) {
-        List<MethodCallRecord> result = new ArrayList<>();
-        for (MethodCallRecord call : getAllMethodCallsUpToCurrent()) {
-            if (call.getMethodName().equals(methodName)) {
-                result.add(call);
-            }
+        if (currentSnapshotIndex < 0) {
+            return Collections.emptyList();
         }
-        return result;
+        return methodCallIndex.getCallsToMethodUpTo(methodName, currentSnapshotIndex);
     }
 
     public List<MethodCallRecord> getCallsToMethod(String methodName) {
-        List<MethodCallRecord> result = new ArrayList<>();
-        for (MethodCallRecord call : allMethodCalls) {
-            if (call.getMethodName().equals(methodName)) {
-                result.add(call);
-            }
-        }
-        return result;
+        return methodCallIndex.getCallsToMethod(methodName);
+    }
+
+    // Signatures des méthodes appelantes de methodName
+    public Set<String> getCallersOf(String methodName) {
+        return methodCallIndex.getCallersOf(methodName);
+    }
+
+    // Nombre de snapshots enregistrés dans methodName et ses appels imbriqués
+    public long getStepsSpentIn(String methodName) {
+        return methodCallIndex.getStepsSpentIn(methodName);
+    }
+
+    public long getTotalJdwpRoundTrips() {
+        return totalJdwpRoundTrips;
+    }
+
+    // Nombre moyen de requêtes JDWP par snapshot capturé
+    public double getJdwpRoundTripsPerSnapshot() {
+        return timeline.size() == 0 ? 0 : (double) totalJdwpRoundTrips / timeline.size();
+    }
+
+    public MethodCallIndex getMethodCallIndex() {
+        return methodCallIndex;
     }
 
     // Restaure un état passé correspondant à l'ID de snapshot donné
     public boolean travelToSnapshot(int snapshotId) {
-        for (int i = 0; i < timeline.size(); i++) {
-            if (timeline.get(i).getSnapshotId() == snapshotId) {
-                currentSnapshotIndex = i;
-                if (callback != null) {
-                    callback.restoreSnapshot(timeline.get(i));
-                }
-                return true;
-            }
+        return seek(snapshotId);
+    }
+
+    // Curseur de replay : accès direct par id, sans parcours ni copie de la chronologie.
+    // false si le snapshot n'est plus disponible (flight recorder) ou si sa tranche n'a pas pu être relue du disque
+    public boolean seek(int snapshotId) {
+        ExecutionSnapshot snapshot;
+        try {
+            snapshot = getSnapshot(snapshotId);
+        } catch (UncheckedIOException e) {
+            return false;
+        }
+        if (snapshot == null) {
+            return false;
+        }
+        currentSnapshotIndex = snapshotId;
+        if (callback != null) {
+            callback.restoreSnapshot(snapshot);
+        }
+        return true;
+    }
+
+    public boolean next() {
+        return seek(currentSnapshotIndex + 1);
+    }
+
+    public boolean previous() {
+        return seek(currentSnapshotIndex - 1);
+    }
+
+    public boolean hasNext() {
+        return currentSnapshotIndex + 1 < timeline.size();
+    }
+
+    public boolean hasPrevious() {
+        return currentSnapshotIndex > timeline.firstSnapshotId();
+    }
+
+    public ExecutionSnapshot getSnapshot(int snapshotId) {
+        if (snapshotId < timeline.firstSnapshotId() || snapshotId >= timeline.size()) {
+            return null;
         }
-        return false;
+        return timeline.get(snapshotId);
     }
 
+    // Vue en lecture seule : aucune copie, les snapshots sont lus dans le stockage à la demande
     public List<ExecutionSnapshot> getTimeline() {
-        return new ArrayList<>(timeline);
+        return new AbstractList<ExecutionSnapshot>() {
+            @Override
+            public ExecutionSnapshot get(int index) {
+                return timeline.get(index);
+            }
+
+            @Override
+            public int size() {
+                return timeline.size();
+            }
+        };
+    }
+
+    public TimelineStore getTimelineStore() {
+        return timeline;
+    }
+
+    // Premier snapshot encore disponible : 0, sauf en mode flight recorder une fois le budget dépassé
+    public int getFirstSnapshotId() {
+        return timeline.firstSnapshotId();
+    }
+
+    // Tranches de la chronologie déversées sur disque une fois le budget mémoire dépassé
+    public int getSpilledSegmentCount() {
+        return timeline instanceof ColumnarTimelineStore ? ((ColumnarTimelineStore) timeline).getSpilledSegmentCount() : 0;
+    }
+
+    // Snapshots par tranche : granularité à laquelle le budget mémoire déverse ou supprime la chronologie
+    public int getSegmentSize() {
+        return timeline instanceof ColumnarTimelineStore ? ((ColumnarTimelineStore) timeline).getSegmentSize() : 0;
+    }
+
+    // Borne la chronologie en mémoire ; à choisir avant le premier snapshot, avec le stockage en colonnes
+    public void setMemoryBudget(MemoryBudget budget) {
+        if (!(timeline instanceof ColumnarTimelineStore) || timeline.size() > 0) {
+            throw new IllegalStateException("Le budget mémoire se choisit avant l'enregistrement, stockage en colonnes uniquement");
+        }
+        timeline = new ColumnarTimelineStore(frameNodes, outputLog, values, budget);
+    }
+
+    // Enregistrement armé (voir TraceRecorder) : déclencheur atteint au snapshot snapshotId. Seuls les preTriggerSteps
+    // pas qui le précèdent restent lisibles, et la suite est gardée dans la limite du budget.
+    // Pendant l'armement, les index suivent déjà l'anneau tranche par tranche ; ils sont ici ramenés au premier pas gardé
+    public void commitTrigger(int snapshotId, int preTriggerSteps, MemoryBudget budget) {
+        if (!(timeline instanceof ColumnarTimelineStore)) {
+            throw new IllegalStateException("L'enregistrement armé demande le stockage en colonnes");
+        }
+        ColumnarTimelineStore store = (ColumnarTimelineStore) timeline;
+        store.discardBefore(snapshotId - preTriggerSteps);
+        store.setBudget(budget);
+        if (store.firstSnapshotId() > indexedFromSnapshotId) {
+            discardIndicesBefore(store.firstSnapshotId());
+        }
+    }
+
+    // Index de profondeur du thread du snapshot courant (step over / step out restent dans ce thread)
+    public DepthIndex getDepthIndex() {
+        return currentSnapshotIndex >= 0 ? getDepthIndex(timeline.getThreadId(currentSnapshotIndex)) : new DepthIndex();
+    }
+
+    public DepthIndex getDepthIndex(int threadId) {
+        return threads.get(threadId).timeline.getDepthIndex();
+    }
+
+    public List<ThreadTimeline> getThreadTimelines() {
+        List<ThreadTimeline> timelines = new ArrayList<>(threads.size());
+        for (ThreadState state : threads) {
+            timelines.add(state.timeline);
+        }
+        return timelines;
+    }
+
+    public ThreadTimeline getThreadTimeline(int threadId) {
+        return threads.get(threadId).timeline;
+    }
+
+    public LocationIndex getLocationIndex() {
+        return locationIndex;
     }
 
     public int getCurrentSnapshotIndex() {
@@ -283,41 +558,274 @@ public class TimelineManager {
         return timeline.size();
     }
 
+    ValueTable getValueTable() {
+        return values;
+    }
+
+    MethodMetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    ShadowCallStack getFrameNodes() {
+        return frameNodes;
+    }
+
+    // Section propre au gestionnaire : compteurs, threads avec leur index de profondeur, historiques des variables.
+    // Les modifications sont des enregistrements de taille fixe (MODIFICATION_SIZE), lus en place à la réouverture
+    synchronized void writeTimelineTo(DataOutputStream out) throws IOException {
+        out.writeLong(totalJdwpRoundTrips);
+        out.writeInt(threads.size());
+        for (ThreadState state : threads) {
+            out.writeLong(state.timeline.getUniqueId());
+            TraceFile.writeString(out, state.timeline.getName());
+            state.timeline.getDepthIndex().writeTo(out);
+        }
+        StringDictionary methodNames = new StringDictionary();
+        for (List<VariableTracker> trackers : trackersByName.values()) {
+            for (VariableTracker tracker : trackers) {
+                for (VariableModification mod : tracker.modifications) {
+                    methodNames.idOf(mod.getMethodName());
+                }
+            }
+        }
+        methodNames.writeTo(out);
+        out.writeInt(trackersByName.size());
+        for (Map.Entry<String, List<VariableTracker>> entry : trackersByName.entrySet()) {
+            TraceFile.writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (VariableTracker tracker : entry.getValue()) {
+                out.writeInt(tracker.threadId);
+                out.writeInt(tracker.methodId);
+                TraceFile.writeString(out, tracker.methodContext);
+                out.writeInt(tracker.modifications.size());
+                for (VariableModification mod : tracker.modifications) {
+                    out.writeInt(mod.getSnapshotId());
+                    out.writeByte(mod.getOldTag());
+                    out.writeLong(mod.getOldBits());
+                    out.writeByte(mod.getNewTag());
+                    out.writeLong(mod.getNewBits());
+                    out.writeInt(mod.getLineNumber());
+                    out.writeInt(methodNames.find(mod.getMethodName()));
+                    out.writeLong(mod.getTimestamp());
+                }
+            }
+        }
+    }
+
+    // Seules les tables (threads, trackers) sont lues ; index de profondeur et modifications restent dans le fichier
+    void readTimelineFrom(TraceSection section) {
+        totalJdwpRoundTrips = section.getLong();
+        int threadCount = section.getInt();
+        for (int threadId = 0; threadId < threadCount; threadId++) {
+            long uniqueId = section.getLong();
+            String name = section.getString();
+            ThreadState state = new ThreadState(new ThreadTimeline(threadId, uniqueId, name,
+                    new ShadowCallStack(frameNodes), DepthIndex.readFrom(section)));
+            threads.add(state);
+            threadsByUniqueId.put(uniqueId, state);
+        }
+        StringDictionary methodNames = StringDictionary.readFrom(section);
+        int nameCount = section.getInt();
+        for (int n = 0; n < nameCount; n++) {
+            String variableName = section.getString();
+            int nameId = variableNames.idOf(variableName);
+            for (int trackerCount = section.getInt(); trackerCount > 0; trackerCount--) {
+                int threadId = section.getInt();
+                int methodId = section.getInt();
+                String methodContext = section.getString();
+                int modificationCount = section.getInt();
+                VariableTracker tracker = new VariableTracker(variableName, methodContext, threadId, methodId,
+                        section, section.position(), modificationCount, methodNames);
+                section.skip((long) MODIFICATION_SIZE * modificationCount);
+                threads.get(threadId).putTracker(methodId, nameId, tracker);
+                indexTrackerByName(tracker);
+            }
+        }
+    }
+
+    // État d'enregistrement propre à un thread : deltas de variables par frame et trackers
+    private class ThreadState {
+        private final ThreadTimeline timeline;
+        private final List<FrameVariables> frameVariables;
+        // Trackers indexés par id de méthode puis par id de nom de variable : aucune clé allouée par pas
+        private VariableTracker[][] variableTrackers;
+
+        ThreadState(ThreadTimeline timeline) {
+            this.timeline = timeline;
+            this.frameVariables = new ArrayList<>();
+            this.variableTrackers = new VariableTracker[16][];
+        }
+
+        VariableTracker tracker(int methodId, int nameId) {
+            if (methodId >= variableTrackers.length) return null;
+            VariableTracker[] byName = variableTrackers[methodId];
+            return byName != null && nameId < byName.length ? byName[nameId] : null;
+        }
+
+        void putTracker(int methodId, int nameId, VariableTracker tracker) {
+            if (methodId >= variableTrackers.length) {
+                variableTrackers = Arrays.copyOf(variableTrackers, Math.max(methodId + 1, variableTrackers.length * 2));
+            }
+            VariableTracker[] byName = variableTrackers[methodId];
+            if (byName == null) {
+                byName = new VariableTracker[Math.max(8, nameId + 1)];
+            } else if (nameId >= byName.length) {
+                byName = Arrays.copyOf(byName, Math.max(nameId + 1, byName.length * 2));
+            }
+            byName[nameId] = tracker;
+            variableTrackers[methodId] = byName;
+        }
+    }
+
+    // Dernier état connu des variables d'une frame active de la pile
+    private static class FrameVariables {
+        private final int methodId;
+        private final ExecutionSnapshot snapshot;
+        private final VariableValues variables;
+        private final int chainLength;
+        private final int accumulatedChanges;
+
+        FrameVariables(int methodId, ExecutionSnapshot snapshot, VariableValues variables,
+                       int chainLength, int accumulatedChanges) {
+            this.methodId = methodId;
+            this.snapshot = snapshot;
+            this.variables = variables;
+            this.chainLength = chainLength;
+            this.accumulatedChanges = accumulatedChanges;
+        }
+    }
+
     private class VariableTracker {
         private final String variableName;
         private final String methodContext;
-        private String lastValue;
+        private final int threadId;
+        private final int methodId;
+        private byte lastTag;
+        private long lastBits;
         private List<VariableModification> modifications;
-
-        public VariableTracker(String variableName, String initialValue, String methodContext) {
+        // Ids des snapshots de chaque modification, triés puisque ajoutés dans l'ordre d'enregistrement
+        private int[] modificationSnapshotIds;
+        // Historique relu depuis un fichier de trace, null pendant l'enregistrement : count enregistrements
+        // de MODIFICATION_SIZE octets à partir de modificationsAt, décodés à la demande
+        private final TraceSection section;
+        private final long modificationsAt;
+        private final int count;
+        private final StringDictionary methodNames;
+
+        public VariableTracker(String variableName, byte initialTag, long initialBits, String methodContext,
+                               int threadId, int methodId) {
             this.variableName = variableName;
             this.methodContext = methodContext;
-            this.lastValue = initialValue;
+            this.threadId = threadId;
+            this.methodId = methodId;
+            this.lastTag = initialTag;
+            this.lastBits = initialBits;
             this.modifications = new ArrayList<>();
+            this.modificationSnapshotIds = new int[4];
+            this.section = null;
+            this.modificationsAt = -1;
+            this.count = 0;
+            this.methodNames = null;
+        }
+
+        VariableTracker(String variableName, String methodContext, int threadId, int methodId,
+                        TraceSection section, long modificationsAt, int count, StringDictionary methodNames) {
+            this.variableName = variableName;
+            this.methodContext = methodContext;
+            this.threadId = threadId;
+            this.methodId = methodId;
+            this.section = section;
+            this.modificationsAt = modificationsAt;
+            this.count = count;
+            this.methodNames = methodNames;
         }
 
         public void initializeVariable(ExecutionSnapshot snapshot){
-            modifications.add(new VariableModification(
-                    variableName, "_", lastValue,
+            addModification(new VariableModification(
+                    variableName, values, ValueTable.UNSET, 0, lastTag, lastBits,
                     snapshot.getSnapshotId(), snapshot.getLineNumber(), snapshot.getMethodName()));
         }
 
-        public void checkForModification(String newValue, ExecutionSnapshot snapshot) {
-            if (!newValue.equals(lastValue)) {
-                modifications.add(new VariableModification(
-                        variableName, lastValue, newValue,
+        // Comparaison primitive : aucune mise en texte pendant l'enregistrement
+        public void checkForModification(byte newTag, long newBits, ExecutionSnapshot snapshot) {
+            if (newTag != lastTag || newBits != lastBits) {
+                addModification(new VariableModification(
+                        variableName, values, lastTag, lastBits, newTag, newBits,
                         snapshot.getSnapshotId(), snapshot.getLineNumber(), snapshot.getMethodName()));
-                lastValue = newValue;
+                lastTag = newTag;
+                lastBits = newBits;
+            }
+        }
+
+        private void addModification(VariableModification mod) {
+            int size = modifications.size();
+            if (size == modificationSnapshotIds.length) {
+                modificationSnapshotIds = Arrays.copyOf(modificationSnapshotIds, size * 2);
             }
+            modificationSnapshotIds[size] = mod.getSnapshotId();
+            modifications.add(mod);
         }
 
+        // Retire les modifications faites avant snapshotId ; le tableau des ids rétrécit s'il est devenu trop grand
+        void discardBefore(int snapshotId) {
+            int size = modifications.size();
+            int index = Arrays.binarySearch(modificationSnapshotIds, 0, size, snapshotId);
+            int count = index >= 0 ? index : -index - 1;
+            if (count == 0) return;
+            modifications.subList(0, count).clear();
+            if (modificationSnapshotIds.length > 16 && size - count < modificationSnapshotIds.length / 4) {
+                modificationSnapshotIds = Arrays.copyOfRange(modificationSnapshotIds, count,
+                        count + Math.max((size - count) * 2, 4));
+            } else {
+                System.arraycopy(modificationSnapshotIds, count, modificationSnapshotIds, 0, size - count);
+            }
+        }
+
+        // Copie : le thread d'indexation continue d'ajouter des modifications pendant l'enregistrement.
+        // Un historique relu ne change plus : vue décodée à la demande, sans copie
         public List<VariableModification> getModifications() {
-            return new ArrayList<>(modifications);
+            if (section != null) {
+                return recordedModifications(count);
+            }
+            return Collections.unmodifiableList(new ArrayList<>(modifications));
+        }
+
+        // Copie du préfixe des modifications faites jusqu'à maxSnapshotId inclus, trouvé par recherche dichotomique
+        public List<VariableModification> getModificationsUpTo(int maxSnapshotId) {
+            if (section != null) {
+                int index = section.binarySearch(modificationsAt, MODIFICATION_SIZE, 0, count, maxSnapshotId);
+                return recordedModifications(index >= 0 ? index + 1 : -index - 1);
+            }
+            int size = modifications.size();
+            int index = Arrays.binarySearch(modificationSnapshotIds, 0, size, maxSnapshotId);
+            int end = index >= 0 ? index + 1 : -index - 1;
+            return Collections.unmodifiableList(new ArrayList<>(modifications.subList(0, end)));
         }
 
         public String getVariableName() {
             return variableName;
         }
+
+        // Les size premières modifications relues, décodées une à une à la lecture
+        private List<VariableModification> recordedModifications(int size) {
+            return new AbstractList<VariableModification>() {
+                @Override
+                public VariableModification get(int index) {
+                    if (index < 0 || index >= size) {
+                        throw new IndexOutOfBoundsException("Modification " + index + " sur " + size);
+                    }
+                    long at = modificationsAt + (long) MODIFICATION_SIZE * index;
+                    return new VariableModification(variableName, values, section.get(at + 4), section.getLong(at + 5),
+                            section.get(at + 13), section.getLong(at + 14), section.getInt(at),
+                            section.getInt(at + 22), methodNames.get(section.getInt(at + 26)), section.getLong(at + 30));
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
     }
 
     public static class MethodCallRecord {
@@ -326,14 +834,87 @@ public class TimelineManager {
         private final String sourceFile;
         private final int lineNumber;
         private final String fullSignature;
+        private final int depth;
+        private final MethodCallRecord parent;
+        private final List<MethodCallRecord> children;
+        // -1 tant que l'appel n'est pas retourné (ou si l'enregistrement s'arrête avant)
+        private int exitSnapshotId = -1;
+        // Thread de l'appel, et positions d'entrée et de sortie dans la sous-chronologie de ce thread
+        private int threadId;
+        private int entryStep;
+        private int exitStep = -1;
+        // Paramètres relevés au premier snapshot de l'appel, valeur de retour relevée sur le MethodExitEvent ;
+        // gardés sous forme typée et mis en texte à la demande
+        private VariableValues arguments;
+        private byte returnTag = ValueTable.UNSET;
+        private long returnBits;
+        private ValueTable values;
 
         public MethodCallRecord(int snapshotId, String methodName, String sourceFile,
                                 int lineNumber, String fullSignature) {
+            this(snapshotId, methodName, sourceFile, lineNumber, fullSignature, 0, null);
+        }
+
+        public MethodCallRecord(int snapshotId, String methodName, String sourceFile,
+                                int lineNumber, String fullSignature, int depth, MethodCallRecord parent) {
+            this(snapshotId, methodName, sourceFile, lineNumber, fullSignature, depth, parent, new ArrayList<>());
+        }
+
+        // Appel relu depuis un fichier de trace : children est une vue sur ses enfants, décodés à la demande
+        MethodCallRecord(int snapshotId, String methodName, String sourceFile, int lineNumber, String fullSignature,
+                         int depth, MethodCallRecord parent, List<MethodCallRecord> children) {
             this.snapshotId = snapshotId;
             this.methodName = methodName;
             this.sourceFile = sourceFile;
             this.lineNumber = lineNumber;
             this.fullSignature = fullSignature;
+            this.depth = depth;
+            this.parent = parent;
+            this.children = children;
+        }
+
+        // Les enfants sont ajoutés par le thread d'indexation pendant que l'arbre peut être lu
+        void addChild(MethodCallRecord child) {
+            synchronized (children) {
+                children.add(child);
+            }
+        }
+
+        void startOnThread(int threadId, int entryStep) {
+            this.threadId = threadId;
+            this.entryStep = entryStep;
+        }
+
+        void setExit(int exitSnapshotId, int exitStep) {
+            this.exitSnapshotId = exitSnapshotId;
+            this.exitStep = exitStep;
+        }
+
+        void setArguments(VariableValues arguments, ValueTable values) {
+            this.arguments = arguments;
+            this.values = values;
+        }
+
+        void setReturnValue(byte returnTag, long returnBits, ValueTable values) {
+            this.returnTag = returnTag;
+            this.returnBits = returnBits;
+            this.values = values;
+        }
+
+        // Paramètres de l'appel dans l'ordre de déclaration, vide si la méthode n'a pas de table des variables
+        public Map<String, String> getArguments() {
+            Map<String, String> formatted = new LinkedHashMap<>();
+            if (arguments != null) {
+                for (int i = 0; i < arguments.size(); i++) {
+                    formatted.put(arguments.nameAt(i), values.format(arguments.tagAt(i), arguments.bitsAt(i)));
+                }
+            }
+            return formatted;
+        }
+
+        // Valeur renvoyée, null si elle n'a pas été relevée (enregistrement ligne par ligne ou appel non retourné)
+        public String getReturnValue() {
+            return returnTag != ValueTable.UNSET ? values.format(returnTag, returnBits) : null;
         }
 
         public int getSnapshotId() { return snapshotId; }
@@ -341,6 +922,28 @@ public class TimelineManager {
         public String getSourceFile() { return sourceFile; }
         public int getLineNumber() { return lineNumber; }
         public String getFullSignature() { return fullSignature; }
+        public int getDepth() { return depth; }
+        public MethodCallRecord getParent() { return parent; }
+        void retainChildren(Predicate<MethodCallRecord> kept) {
+            synchronized (children) {
+                children.removeIf(child -> !kept.test(child));
+            }
+        }
+
+        public List<MethodCallRecord> getChildren() {
+            synchronized (children) {
+                return Collections.unmodifiableList(new ArrayList<>(children));
+            }
+        }
+        public int getExitSnapshotId() { return exitSnapshotId; }
+        public boolean hasReturned() { return exitSnapshotId >= 0; }
+        public int getThreadId() { return threadId; }
+        int getEntryStep() { return entryStep; }
+        int getExitStep() { return exitStep; }
+        VariableValues getArgumentValues() { return arguments; }
+        byte getReturnTag() { return returnTag; }
+        long getReturnBits() { return returnBits; }
+
 
         @Override
         public String toString() {
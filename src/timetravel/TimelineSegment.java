@@ -0,0 +1,178 @@
+package timetravel;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Tranche consécutive de la chronologie en colonnes (ids firstId à firstId + count - 1), voir ColumnarTimelineStore.
+ * Une tranche est autonome : les deltas de variables n'y référencent que des snapshots de la même tranche,
+ * ce qui permet de l'écrire sur disque ou de la supprimer sans toucher aux autres.
+ */
+class TimelineSegment {
+    private final int firstId;
+    private int count;
+    private int[] threadIds;
+    private long[] timestamps;
+    private int[] lines;
+    private int[] methodIds;
+    private int[] fileIds;
+    private int[] depths;
+    private int[] frameIds;
+    private int[] outputOffsets;
+
+    // Id du snapshot dont les variables servent de base au delta, -1 pour un keyframe
+    private int[] variableBases;
+    // Début des entrées du snapshot dans les colonnes de variables (fin = début du suivant)
+    private int[] variableStarts;
+    private int[] entryNames;
+    private byte[] entryTags;
+    private long[] entryBits;
+    private int entryCount;
+
+    TimelineSegment(int firstId, int capacity) {
+        this.firstId = firstId;
+        this.threadIds = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.lines = new int[capacity];
+        this.methodIds = new int[capacity];
+        this.fileIds = new int[capacity];
+        this.depths = new int[capacity];
+        this.frameIds = new int[capacity];
+        this.outputOffsets = new int[capacity];
+        this.variableBases = new int[capacity];
+        this.variableStarts = new int[capacity + 1];
+        this.entryNames = new int[capacity * 4];
+        this.entryTags = new byte[capacity * 4];
+        this.entryBits = new long[capacity * 4];
+    }
+
+    // Ajoute un snapshot ; ses entrées de variables sont ensuite ajoutées par addEntry
+    void add(int threadId, long timestamp, int line, int methodId, int fileId, int depth, int frameId,
+             int outputOffset, int variableBase) {
+        if (count == lines.length) {
+            grow(Math.max(16, count * 2));
+        }
+        threadIds[count] = threadId;
+        timestamps[count] = timestamp;
+        lines[count] = line;
+        methodIds[count] = methodId;
+        fileIds[count] = fileId;
+        depths[count] = depth;
+        frameIds[count] = frameId;
+        outputOffsets[count] = outputOffset;
+        variableBases[count] = variableBase;
+        variableStarts[count + 1] = entryCount;
+        count++;
+    }
+
+    void addEntry(int nameId, byte tag, long bits) {
+        if (entryCount == entryNames.length) {
+            int capacity = Math.max(16, entryCount * 2);
+            entryNames = Arrays.copyOf(entryNames, capacity);
+            entryTags = Arrays.copyOf(entryTags, capacity);
+            entryBits = Arrays.copyOf(entryBits, capacity);
+        }
+        entryNames[entryCount] = nameId;
+        entryTags[entryCount] = tag;
+        entryBits[entryCount] = bits;
+        entryCount++;
+        variableStarts[count] = entryCount;
+    }
+
+    // Tranche pleine : les colonnes sont ramenées à leur taille exacte
+    void compact() {
+        grow(count);
+        entryNames = Arrays.copyOf(entryNames, entryCount);
+        entryTags = Arrays.copyOf(entryTags, entryCount);
+        entryBits = Arrays.copyOf(entryBits, entryCount);
+    }
+
+    int getFirstId() { return firstId; }
+    int size() { return count; }
+    int getThreadId(int snapshotId) { return threadIds[snapshotId - firstId]; }
+    long getTimestamp(int snapshotId) { return timestamps[snapshotId - firstId]; }
+    int getLineNumber(int snapshotId) { return lines[snapshotId - firstId]; }
+    int getMethodId(int snapshotId) { return methodIds[snapshotId - firstId]; }
+    int getFileId(int snapshotId) { return fileIds[snapshotId - firstId]; }
+    int getStackDepth(int snapshotId) { return depths[snapshotId - firstId]; }
+    int getFrameId(int snapshotId) { return frameIds[snapshotId - firstId]; }
+    int getOutputOffset(int snapshotId) { return outputOffsets[snapshotId - firstId]; }
+    int getVariableBase(int snapshotId) { return variableBases[snapshotId - firstId]; }
+    int entriesStart(int snapshotId) { return variableStarts[snapshotId - firstId]; }
+    int entriesEnd(int snapshotId) { return variableStarts[snapshotId - firstId + 1]; }
+    int entryName(int entry) { return entryNames[entry]; }
+    byte entryTag(int entry) { return entryTags[entry]; }
+    long entryBits(int entry) { return entryBits[entry]; }
+
+    // Mémoire occupée par les colonnes, capacité de réserve comprise
+    long residentBytes() {
+        return lines.length * 40L + variableStarts.length * 4L + entryNames.length * 13L;
+    }
+
+    // Taille de la forme binaire écrite par writeTo
+    int encodedSize() {
+        return 12 + count * 40 + (count + 1) * 4 + entryCount * 13;
+    }
+
+    // Forme binaire : en-tête (premier id, nombre de snapshots, nombre d'entrées) puis chaque colonne à la suite
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(firstId).putInt(count).putInt(entryCount);
+        buffer.asIntBuffer().put(threadIds, 0, count);
+        buffer.position(buffer.position() + count * 4);
+        buffer.asLongBuffer().put(timestamps, 0, count);
+        buffer.position(buffer.position() + count * 8);
+        for (int[] column : new int[][]{lines, methodIds, fileIds, depths, frameIds, outputOffsets, variableBases}) {
+            buffer.asIntBuffer().put(column, 0, count);
+            buffer.position(buffer.position() + count * 4);
+        }
+        buffer.asIntBuffer().put(variableStarts, 0, count + 1);
+        buffer.position(buffer.position() + (count + 1) * 4);
+        buffer.asIntBuffer().put(entryNames, 0, entryCount);
+        buffer.position(buffer.position() + entryCount * 4);
+        buffer.put(entryTags, 0, entryCount);
+        buffer.asLongBuffer().put(entryBits, 0, entryCount);
+        buffer.position(buffer.position() + entryCount * 8);
+    }
+
+    static TimelineSegment readFrom(ByteBuffer buffer) {
+        int firstId = buffer.getInt();
+        int count = buffer.getInt();
+        int entryCount = buffer.getInt();
+        TimelineSegment segment = new TimelineSegment(firstId, count);
+        segment.count = count;
+        segment.entryCount = entryCount;
+        segment.entryNames = new int[entryCount];
+        segment.entryTags = new byte[entryCount];
+        segment.entryBits = new long[entryCount];
+        buffer.asIntBuffer().get(segment.threadIds);
+        buffer.position(buffer.position() + count * 4);
+        buffer.asLongBuffer().get(segment.timestamps);
+        buffer.position(buffer.position() + count * 8);
+        for (int[] column : new int[][]{segment.lines, segment.methodIds, segment.fileIds, segment.depths,
+                segment.frameIds, segment.outputOffsets, segment.variableBases}) {
+            buffer.asIntBuffer().get(column);
+            buffer.position(buffer.position() + count * 4);
+        }
+        buffer.asIntBuffer().get(segment.variableStarts);
+        buffer.position(buffer.position() + (count + 1) * 4);
+        buffer.asIntBuffer().get(segment.entryNames);
+        buffer.position(buffer.position() + entryCount * 4);
+        buffer.get(segment.entryTags);
+        buffer.asLongBuffer().get(segment.entryBits);
+        buffer.position(buffer.position() + entryCount * 8);
+        return segment;
+    }
+
+    private void grow(int capacity) {
+        threadIds = Arrays.copyOf(threadIds, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        methodIds = Arrays.copyOf(methodIds, capacity);
+        fileIds = Arrays.copyOf(fileIds, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        frameIds = Arrays.copyOf(frameIds, capacity);
+        outputOffsets = Arrays.copyOf(outputOffsets, capacity);
+        variableBases = Arrays.copyOf(variableBases, capacity);
+        variableStarts = Arrays.copyOf(variableStarts, capacity + 1);
+    }
+}
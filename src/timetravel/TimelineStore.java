@@ -0,0 +1,34 @@
+package timetravel;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Stockage de la chronologie enregistrée. Les snapshots sont ajoutés dans l'ordre,
+ * l'id d'un snapshot étant sa position. Les ids inférieurs à firstSnapshotId ne sont plus lisibles.
+ * close libère ce que le stockage garde hors du tas (fichier de débordement, fichier de trace) en fin de session.
+ */
+public interface TimelineStore extends Closeable {
+    void append(ExecutionSnapshot snapshot);
+
+    ExecutionSnapshot get(int snapshotId);
+
+    int size();
+
+    int firstSnapshotId();
+
+    int getLineNumber(int snapshotId);
+
+    int getMethodId(int snapshotId);
+
+    int getStackDepth(int snapshotId);
+
+    int getOutputOffset(int snapshotId);
+
+    int getThreadId(int snapshotId);
+
+    // Rien à libérer pour un stockage entièrement en mémoire
+    @Override
+    default void close() throws IOException {
+    }
+}
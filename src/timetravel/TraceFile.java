@@ -0,0 +1,172 @@
+package timetravel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Fichier de trace binaire : un enregistrement terminé, rouvert plus tard en mode replay sans relancer la VM cible.
+ * En-tête (magic, version, table des sections : type, position, longueur) puis une section par structure :
+ * table des valeurs, dictionnaires des méthodes, arbre des frames, description des colonnes, tranches de colonnes,
+ * sortie du programme, index des lignes, arbre des appels, chronologies des threads avec historiques des variables.
+ * Écrit par un FileChannel ; à la réouverture, les sections sont mappées par morceaux (TraceSection, aucun mapping
+ * ne dépasse 2 Go). Seuls les dictionnaires et les tables (lignes, threads, trackers, noms de méthodes) sont relus
+ * en mémoire : les tranches de colonnes ne sont mappées que si le replay les consulte, et les structures qui
+ * grandissent à chaque pas (sortie, passages, profondeurs, appels, historiques) sont lues en place.
+ */
+public class TraceFile implements SegmentSource {
+    private static final int MAGIC = 0x4A545452; // "JTTR"
+    // 2 : index et sortie élagués avec la chronologie (premier pas, passages et sortie retirés)
+    // 3 : structures par pas lues en place (sortie en UTF-16, pointeurs de profondeur, appels et modifications indexés)
+    private static final int VERSION = 3;
+
+    private static final int VALUES = 1;
+    private static final int METHODS = 2;
+    private static final int FRAMES = 3;
+    private static final int COLUMNS = 4;
+    private static final int SEGMENTS = 5;
+    private static final int OUTPUT = 6;
+    private static final int LOCATIONS = 7;
+    private static final int CALLS = 8;
+    private static final int TIMELINE = 9;
+    private static final int SECTION_COUNT = 9;
+    private static final int HEADER_SIZE = 12 + SECTION_COUNT * 20;
+
+    private interface SectionWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final FileChannel channel;
+    private final long segmentsStart;
+
+    private TraceFile(FileChannel channel, long segmentsStart) {
+        this.channel = channel;
+        this.segmentsStart = segmentsStart;
+    }
+
+    public static void write(TimelineManager manager, Path path) throws IOException {
+        if (!(manager.getTimelineStore() instanceof ColumnarTimelineStore)) {
+            throw new IllegalStateException("Seule une chronologie en colonnes peut être écrite dans un fichier de trace");
+        }
+        ColumnarTimelineStore store = (ColumnarTimelineStore) manager.getTimelineStore();
+        if (store.isReadOnly()) {
+            throw new IllegalStateException("Chronologie relue depuis un fichier de trace : elle y est déjà écrite");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(SECTION_COUNT);
+            channel.position(HEADER_SIZE);
+            writeSection(channel, header, VALUES, out -> manager.getValueTable().writeTo(out));
+            writeSection(channel, header, METHODS, out -> manager.getMetadataCache().writeTo(out));
+            writeSection(channel, header, FRAMES, out -> manager.getFrameNodes().writeTo(out));
+            writeSection(channel, header, COLUMNS, store::writeColumnsTo);
+            writeSection(channel, header, SEGMENTS, store::writeSegmentsTo);
+            writeSection(channel, header, OUTPUT, out -> manager.getOutputLog().writeTo(out));
+            writeSection(channel, header, LOCATIONS, out -> manager.getLocationIndex().writeTo(out));
+            writeSection(channel, header, CALLS, out -> manager.getMethodCallIndex().writeTo(out));
+            writeSection(channel, header, TIMELINE, manager::writeTimelineTo);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    // Le canal reste ouvert tant que la chronologie relue est utilisée : les tranches y sont lues à la demande
+    public static TimelineManager open(Path path) throws IOException {
+        return open(path, TraceSection.CHUNK_SIZE);
+    }
+
+    // chunkSize : taille des morceaux mappés, une puissance de 2 (plus petite que 1 Go pour les tests)
+    static TimelineManager open(Path path, int chunkSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_SIZE, channel.size()));
+            if (header.remaining() < 12 || header.getInt() != MAGIC) {
+                throw new IOException("Pas un fichier de trace : " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Version de fichier de trace non prise en charge : " + version);
+            }
+            int sectionCount = header.getInt();
+            if (header.remaining() < sectionCount * 20) {
+                throw new IOException("En-tête de fichier de trace tronqué : " + path);
+            }
+            Map<Integer, long[]> sections = new HashMap<>();
+            for (int i = 0; i < sectionCount; i++) {
+                sections.put(header.getInt(), new long[]{header.getLong(), header.getLong()});
+            }
+
+            ValueTable values = ValueTable.readFrom(map(channel, sections, VALUES, chunkSize));
+            MethodMetadataCache metadataCache = MethodMetadataCache.readFrom(map(channel, sections, METHODS, chunkSize));
+            ShadowCallStack frameNodes = ShadowCallStack.readFrom(map(channel, sections, FRAMES, chunkSize),
+                    metadataCache);
+            OutputLog outputLog = OutputLog.readFrom(map(channel, sections, OUTPUT, chunkSize));
+            TraceFile segments = new TraceFile(channel, section(sections, SEGMENTS)[0]);
+            ColumnarTimelineStore store = ColumnarTimelineStore.readFrom(map(channel, sections, COLUMNS, chunkSize),
+                    frameNodes, outputLog, values, segments);
+            TimelineManager manager = new TimelineManager(store, frameNodes, outputLog, values, metadataCache,
+                    LocationIndex.readFrom(map(channel, sections, LOCATIONS, chunkSize)),
+                    MethodCallIndex.readFrom(map(channel, sections, CALLS, chunkSize), values));
+            manager.readTimelineFrom(map(channel, sections, TIMELINE, chunkSize));
+            return manager;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Une tranche est mappée à la demande ; ColumnarTimelineStore garde les dernières décodées
+    @Override
+    public TimelineSegment read(long position, int length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segmentsStart + position, length);
+        return TimelineSegment.readFrom(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Chaîne en UTF-8 précédée de sa longueur en octets, -1 pour null
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Section écrite à la position courante du canal, puis inscrite dans la table de l'en-tête
+    private static void writeSection(FileChannel channel, ByteBuffer header, int type, SectionWriter writer)
+            throws IOException {
+        long start = channel.position();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        writer.write(out);
+        out.flush();
+        header.putInt(type).putLong(start).putLong(channel.position() - start);
+    }
+
+    private static long[] section(Map<Integer, long[]> sections, int type) throws IOException {
+        long[] section = sections.get(type);
+        if (section == null) {
+            throw new IOException("Section " + type + " absente du fichier de trace");
+        }
+        return section;
+    }
+
+    private static TraceSection map(FileChannel channel, Map<Integer, long[]> sections, int type, int chunkSize)
+            throws IOException {
+        long[] section = section(sections, type);
+        return new TraceSection(channel, section[0], section[1], chunkSize);
+    }
+}
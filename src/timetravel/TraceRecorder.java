@@ -0,0 +1,545 @@
+package timetravel;
+
+import com.sun.jdi.*;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.*;
+import java.util.*;
+
+/**
+ * Boucle d'enregistrement commune aux débogueurs console et graphique :
+ * installe les requêtes JDI selon le mode choisi et transforme les événements en snapshots.
+ * Le code hors de la portée n'est pas parcouru : les classes exclues sont filtrées par la VM cible,
+ * une méthode hors portée appelée depuis la portée est quittée par un STEP_OUT, et sans code de la portée
+ * sur la pile on attend la prochaine entrée dans la portée (MethodEntryRequest) au lieu de pas à pas.
+ * Chaque thread a ses propres requêtes en SUSPEND_EVENT_THREAD : seul le thread de l'événement est
+ * suspendu pendant la capture, les autres continuent de s'exécuter.
+ * Pendant la suspension, seules les lectures JDWP sont faites (TimelineManager.captureSnapshot) ; deltas,
+ * trackers, arbre des appels et notifications du Listener passent par la CapturePipeline une fois le thread relâché.
+ * Avec des déclencheurs (RecordingOptions.getTriggers), l'enregistrement est armé : la chronologie ne garde que les
+ * derniers pas (budget DROP) jusqu'au premier déclencheur atteint, puis tout ce qui suit (TimelineManager.commitTrigger).
+ * L'enregistrement peut aussi couvrir une fenêtre (stop, ou RecordingOptions.getWindowMillis) d'une VM qui continue
+ * ensuite de s'exécuter, par exemple une VM à laquelle on s'est attaché (recordRunningThreads).
+ */
+public class TraceRecorder {
+    // Attente maximale d'un événement : une fenêtre close (stop, durée écoulée) est vue même si la cible est inactive
+    private static final long EVENT_POLL_MILLIS = 100;
+
+    public interface Listener {
+        default void classLoaded(String className) {}
+        default void threadStarted(String threadName) {}
+        default void snapshotRecorded(ExecutionSnapshot snapshot, int snapshotCount) {}
+        default void triggerFired(String trigger, int snapshotId) {}
+        default void vmDisconnected() {}
+    }
+
+    private final VirtualMachine vm;
+    private final TimelineManager timelineManager;
+    private final RecordingOptions options;
+    private final Listener listener;
+    private final RecordingScope scope;
+    private final Map<ThreadReference, ThreadRecording> threads;
+    private volatile boolean recording;
+    private boolean disconnected;
+    private int snapshotCount;
+    private long eventCount;
+    private int maxIndexBacklog;
+    // Enregistrement armé : snapshot du déclencheur atteint (-1 tant qu'aucun ne l'est)
+    private int triggerSnapshotId;
+    private String triggerDescription;
+    private boolean triggerPending;
+    private ExceptionRequest exceptionRequest;
+    private ClassPrepareRequest classPrepareRequest;
+    private ThreadStartRequest threadStartRequest;
+    private ThreadDeathRequest threadDeathRequest;
+
+    public TraceRecorder(VirtualMachine vm, TimelineManager timelineManager,
+                         RecordingOptions options, Listener listener) {
+        this.vm = vm;
+        this.timelineManager = timelineManager;
+        this.options = options;
+        this.listener = listener;
+        this.scope = options.getScope();
+        this.threads = new HashMap<>();
+        this.triggerSnapshotId = -1;
+        if (options.isArmed()) {
+            // Avant le déclencheur, la chronologie sert d'anneau des derniers pas, snapshot déclencheur compris
+            timelineManager.setMemoryBudget(new MemoryBudget(0, options.getPreTriggerSteps() + 1,
+                    MemoryBudget.Overflow.DROP));
+        } else if (!options.getMemoryBudget().isUnlimited()) {
+            timelineManager.setMemoryBudget(options.getMemoryBudget());
+        }
+    }
+
+    // L'enregistrement démarre au chargement de la classe principale
+    public void enableClassPrepareRequest(String className) {
+        classPrepareRequest = vm.eventRequestManager().createClassPrepareRequest();
+        classPrepareRequest.addClassFilter(className);
+        classPrepareRequest.enable();
+    }
+
+    // VM cible déjà lancée (session attachée) : ses threads applicatifs sont enregistrés dès maintenant,
+    // sans attendre le chargement de la classe principale ; avec --threads=main, seul le thread "main"
+    public void recordRunningThreads() {
+        vm.suspend();
+        try {
+            for (ThreadReference thread : vm.allThreads()) {
+                if (isApplicationThread(thread) && (options.isAllThreads() || thread.name().equals("main"))) {
+                    startRecording(thread);
+                }
+            }
+            if (options.isAllThreads()) {
+                enableThreadRequests();
+            }
+            enableExceptionRequest();
+        } finally {
+            vm.resume();
+        }
+    }
+
+    // Threads du groupe "main" et de ses sous-groupes : ceux du JDK (groupe "system") ne sont pas parcourus
+    private static boolean isApplicationThread(ThreadReference thread) {
+        for (ThreadGroupReference group = thread.threadGroup(); group != null; group = group.parent()) {
+            if (group.name().equals("main")) return true;
+        }
+        return false;
+    }
+
+    // Consomme les événements jusqu'à la déconnexion de la VM (ou stop) et renvoie le nombre de snapshots
+    public int record() throws InterruptedException {
+        CapturePipeline pipeline = options.getIndexQueueCapacity() > 0
+                ? new CapturePipeline(options.getIndexQueueCapacity()) : null;
+        try {
+            EventSet suspended = recordEvents(pipeline);
+            if (!disconnected) {
+                releaseTarget(suspended);
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+                maxIndexBacklog = pipeline.getMaxBacklog();
+            }
+        }
+        // Enregistrement armé sans déclencheur atteint : seuls les derniers pas de l'anneau restent
+        if (options.isArmed() && triggerSnapshotId < 0) {
+            timelineManager.commitTrigger(timelineManager.getTimelineSize(), options.getPreTriggerSteps(),
+                    options.getMemoryBudget());
+        }
+        return snapshotCount;
+    }
+
+    // Renvoie l'ensemble d'événements laissé suspendu quand la fenêtre se ferme avant la fin de la VM
+    private EventSet recordEvents(CapturePipeline pipeline) throws InterruptedException {
+        long windowMillis = options.getWindowMillis();
+        long deadline = System.nanoTime() + windowMillis * 1_000_000L;
+        recording = true;
+        while (recording) {
+            if (windowMillis > 0 && System.nanoTime() - deadline >= 0) {
+                recording = false;
+                break;
+            }
+            EventSet eventSet = vm.eventQueue().remove(EVENT_POLL_MILLIS);
+            if (eventSet == null) continue;
+            // Les événements d'un même ensemble partagent thread et emplacement : un seul snapshot
+            ExecutionSnapshot recorded = null;
+
+            for (Event event : eventSet) {
+                eventCount++;
+                if (event instanceof VMDisconnectEvent) {
+                    recording = false;
+                    disconnected = true;
+                    listener.vmDisconnected();
+                    break;
+                }
+
+                if (event instanceof ClassPrepareEvent) {
+                    ClassPrepareEvent evt = (ClassPrepareEvent) event;
+                    listener.classLoaded(evt.referenceType().name());
+                    if (threads.isEmpty()) {
+                        startRecording(evt.thread());
+                        if (options.isAllThreads()) {
+                            enableThreadRequests();
+                        }
+                        enableExceptionRequest();
+                    }
+                }
+
+                if (event instanceof ExceptionEvent) {
+                    exceptionThrown((ExceptionEvent) event);
+                }
+
+                if (event instanceof ThreadStartEvent) {
+                    ThreadReference started = ((ThreadStartEvent) event).thread();
+                    if (!threads.containsKey(started)) {
+                        startRecording(started);
+                        listener.threadStarted(started.name());
+                    }
+                }
+
+                if (event instanceof ThreadDeathEvent) {
+                    ThreadRecording dead = threads.remove(((ThreadDeathEvent) event).thread());
+                    if (dead != null) {
+                        dead.stop();
+                    }
+                }
+
+                if (event instanceof MethodExitEvent) {
+                    MethodExitEvent exit = (MethodExitEvent) event;
+                    ThreadRecording thread = threads.get(exit.thread());
+                    if (thread == null || !scope.includes(exit.method())) continue;
+                    if (recorded == null) {
+                        recorded = captureSnapshot(exit.location(), exit.thread());
+                        observe(thread, recorded, false);
+                    }
+                    if (recorded != null) {
+                        timelineManager.captureReturnValue(recorded, exit.returnValue());
+                    }
+                    thread.closeLineWindow(recorded);
+                } else if (event instanceof StepEvent || event instanceof BreakpointEvent
+                        || event instanceof MethodEntryEvent) {
+                    LocatableEvent locatable = (LocatableEvent) event;
+                    ThreadRecording thread = threads.get(locatable.thread());
+                    if (thread == null) continue;
+                    // En mode METHOD, le retour d'un STEP_OUT n'est ni une entrée ni une sortie : rien à enregistrer
+                    boolean skip = thread.leavingOutOfScope && options.getMode() == RecordingOptions.Mode.METHOD;
+                    if (thread.leavingOutOfScope) {
+                        thread.resume();
+                    }
+                    if (!scope.includes(locatable.location().method())) {
+                        thread.outOfScope();
+                        continue;
+                    }
+                    thread.inScope();
+                    if (skip) continue;
+                    if (recorded == null) {
+                        recorded = captureSnapshot(locatable.location(), locatable.thread());
+                        observe(thread, recorded, event instanceof MethodEntryEvent);
+                    }
+                    if (event instanceof MethodEntryEvent) {
+                        thread.openLineWindow(((MethodEntryEvent) event).method(), recorded);
+                    }
+                }
+            }
+
+            if (recorded != null) {
+                index(recorded, snapshotCount, pipeline);
+            }
+            if (triggerPending) {
+                commitTrigger(pipeline);
+            }
+            if (!recording) {
+                return disconnected ? null : eventSet;
+            }
+            eventSet.resume();
+        }
+        return null;
+    }
+
+    // Fenêtre close avant la fin de la VM cible : toutes les requêtes de l'enregistrement sont supprimées
+    // et les threads suspendus par des événements en attente sont relâchés ; la cible reprend à pleine vitesse
+    private void releaseTarget(EventSet suspended) throws InterruptedException {
+        try {
+            for (ThreadRecording thread : threads.values()) {
+                thread.stop();
+            }
+            threads.clear();
+            EventRequestManager manager = vm.eventRequestManager();
+            for (EventRequest request : new EventRequest[]{classPrepareRequest, threadStartRequest,
+                    threadDeathRequest, exceptionRequest}) {
+                if (request != null) {
+                    manager.deleteEventRequest(request);
+                }
+            }
+            classPrepareRequest = null;
+            threadStartRequest = null;
+            threadDeathRequest = null;
+            exceptionRequest = null;
+            if (suspended != null) {
+                suspended.resume();
+            }
+            for (EventSet pending = vm.eventQueue().remove(EVENT_POLL_MILLIS); pending != null;
+                 pending = vm.eventQueue().remove(EVENT_POLL_MILLIS)) {
+                pending.resume();
+            }
+        } catch (VMDisconnectedException e) {
+            // La VM cible s'est terminée pendant la fermeture de la fenêtre : plus rien à relâcher
+        }
+    }
+
+    public void stop() {
+        recording = false;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    // Plus grand nombre de snapshots capturés en attente d'indexation pendant l'enregistrement
+    public int getMaxIndexBacklog() {
+        return maxIndexBacklog;
+    }
+
+    // Snapshot où l'enregistrement armé s'est déclenché, -1 si aucun déclencheur n'a été atteint
+    public int getTriggerSnapshotId() {
+        return triggerSnapshotId;
+    }
+
+    public String getTriggerDescription() {
+        return triggerDescription;
+    }
+
+    public RecordingOptions getOptions() {
+        return options;
+    }
+
+    // Les threads démarrés ensuite sont enregistrés dès leur ThreadStartEvent
+    private void enableThreadRequests() {
+        EventRequestManager manager = vm.eventRequestManager();
+        threadStartRequest = manager.createThreadStartRequest();
+        threadStartRequest.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+        threadStartRequest.enable();
+        threadDeathRequest = manager.createThreadDeathRequest();
+        threadDeathRequest.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+        threadDeathRequest.enable();
+    }
+
+    // Déclencheur sur exception : une seule requête pour tous les threads, les exceptions hors portée sont ignorées
+    private void enableExceptionRequest() {
+        boolean wanted = false;
+        for (RecordingTrigger trigger : options.getTriggers()) {
+            wanted |= trigger.getKind() == RecordingTrigger.Kind.EXCEPTION;
+        }
+        if (!wanted) return;
+        exceptionRequest = vm.eventRequestManager().createExceptionRequest(null, true, true);
+        exceptionRequest.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+        for (String excluded : scope.classExclusionFilters()) {
+            exceptionRequest.addClassExclusionFilter(excluded);
+        }
+        exceptionRequest.enable();
+    }
+
+    // L'exception se déclenche au dernier snapshot du thread qui la lève (la ligne en cours)
+    private void exceptionThrown(ExceptionEvent event) {
+        ThreadRecording thread = threads.get(event.thread());
+        if (thread == null || triggerSnapshotId >= 0 || !scope.includes(event.location().method())) return;
+        for (RecordingTrigger trigger : options.getTriggers()) {
+            if (trigger.matches(event.exception())) {
+                fire(trigger + " (" + event.exception().referenceType().name() + ")",
+                        Math.max(thread.lastSnapshotId, 0));
+                return;
+            }
+        }
+    }
+
+    // Dernier snapshot et profondeur de chaque thread, puis évaluation des déclencheurs tant qu'aucun n'est atteint
+    private void observe(ThreadRecording thread, ExecutionSnapshot snapshot, boolean methodEntry) {
+        if (snapshot == null) return;
+        boolean entered = methodEntry || snapshot.getStackDepth() > thread.lastDepth;
+        thread.lastDepth = snapshot.getStackDepth();
+        thread.lastSnapshotId = snapshot.getSnapshotId();
+        if (!options.isArmed() || triggerSnapshotId >= 0) return;
+        for (RecordingTrigger trigger : options.getTriggers()) {
+            if (trigger.matches(snapshot, entered)) {
+                fire(trigger.toString(), snapshot.getSnapshotId());
+                return;
+            }
+        }
+    }
+
+    private void fire(String description, int snapshotId) {
+        triggerSnapshotId = snapshotId;
+        triggerDescription = description;
+        triggerPending = true;
+        if (exceptionRequest != null) {
+            vm.eventRequestManager().deleteEventRequest(exceptionRequest);
+            exceptionRequest = null;
+        }
+    }
+
+    // Après l'indexation du snapshot déclencheur, dans l'ordre de la pipeline
+    private void commitTrigger(CapturePipeline pipeline) throws InterruptedException {
+        triggerPending = false;
+        int snapshotId = triggerSnapshotId;
+        String description = triggerDescription;
+        Runnable task = () -> {
+            timelineManager.commitTrigger(snapshotId, options.getPreTriggerSteps(), options.getMemoryBudget());
+            listener.triggerFired(description, snapshotId);
+        };
+        if (pipeline == null) {
+            task.run();
+        } else {
+            pipeline.submit(task);
+        }
+    }
+
+    private void startRecording(ThreadReference thread) {
+        ThreadRecording recording = new ThreadRecording(thread);
+        threads.put(thread, recording);
+        recording.start();
+    }
+
+    private ExecutionSnapshot captureSnapshot(Location location, ThreadReference thread) {
+        ExecutionSnapshot snapshot = timelineManager.captureSnapshot(location, thread);
+        if (snapshot != null) {
+            snapshotCount++;
+        }
+        return snapshot;
+    }
+
+    // Indexation sur le thread de la pipeline (ou tout de suite sans file) ; submit bloque si la file est pleine
+    private void index(ExecutionSnapshot snapshot, int count, CapturePipeline pipeline) throws InterruptedException {
+        Runnable task = () -> {
+            timelineManager.indexSnapshot(snapshot);
+            listener.snapshotRecorded(snapshot, count);
+        };
+        if (pipeline == null) {
+            task.run();
+        } else {
+            pipeline.submit(task);
+        }
+    }
+
+    // Requêtes JDI d'un thread enregistré ; un thread n'a jamais plus d'un StepRequest à la fois
+    private class ThreadRecording {
+        private final ThreadReference thread;
+        private MethodEntryRequest entryRequest;
+        private MethodExitRequest exitRequest;
+        private StepRequest stepRequest;
+        // Vrai entre le STEP_OUT demandé depuis du code hors portée et l'événement qui le termine
+        private boolean leavingOutOfScope;
+        // Mode LINE sans code de la portée sur la pile : pas de pas à pas, seulement les entrées de méthodes
+        private boolean searching;
+        // Profondeurs des méthodes enregistrées ligne par ligne en mode METHOD (la plus récente en dernier)
+        private final Deque<Integer> lineWindows;
+        // Dernier snapshot capturé du thread, pour les déclencheurs
+        private int lastSnapshotId = -1;
+        private int lastDepth;
+
+        ThreadRecording(ThreadReference thread) {
+            this.thread = thread;
+            this.lineWindows = new ArrayDeque<>();
+        }
+
+        void start() {
+            if (options.getMode() == RecordingOptions.Mode.LINE) {
+                step(StepRequest.STEP_INTO);
+                return;
+            }
+            createMethodRequests(true);
+        }
+
+        private void createMethodRequests(boolean withExits) {
+            EventRequestManager manager = vm.eventRequestManager();
+            entryRequest = manager.createMethodEntryRequest();
+            configure(entryRequest);
+            entryRequest.addThreadFilter(thread);
+            for (String excluded : scope.classExclusionFilters()) {
+                entryRequest.addClassExclusionFilter(excluded);
+            }
+            entryRequest.enable();
+            if (!withExits) return;
+            exitRequest = manager.createMethodExitRequest();
+            configure(exitRequest);
+            exitRequest.addThreadFilter(thread);
+            for (String excluded : scope.classExclusionFilters()) {
+                exitRequest.addClassExclusionFilter(excluded);
+            }
+            exitRequest.enable();
+        }
+
+        private void configure(EventRequest request) {
+            request.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+        }
+
+        // Fin du thread : ses requêtes sont supprimées
+        void stop() {
+            step(-1);
+            EventRequestManager manager = vm.eventRequestManager();
+            if (entryRequest != null) manager.deleteEventRequest(entryRequest);
+            if (exitRequest != null) manager.deleteEventRequest(exitRequest);
+        }
+
+        // Remplace le StepRequest du thread (STEP_INTO en mode LINE, STEP_OVER dans une méthode choisie
+        // en mode METHOD, STEP_OUT pour quitter du code hors portée) ; depth < 0 le supprime seulement
+        void step(int depth) {
+            if (stepRequest != null) {
+                vm.eventRequestManager().deleteEventRequest(stepRequest);
+                stepRequest = null;
+            }
+            if (depth < 0) return;
+            stepRequest = vm.eventRequestManager().createStepRequest(thread, StepRequest.STEP_LINE, depth);
+            for (String excluded : scope.classExclusionFilters()) {
+                stepRequest.addClassExclusionFilter(excluded);
+            }
+            configure(stepRequest);
+            stepRequest.enable();
+        }
+
+        // Emplacement hors portée : appelé depuis la portée, on en sort par un STEP_OUT sans enregistrer
+        // ses lignes ni ses appels ; sinon on attend la prochaine entrée dans une méthode de la portée
+        void outOfScope() {
+            if (searching) return;
+            if (calledFromScope()) {
+                if (exitRequest != null) {
+                    entryRequest.disable();
+                    exitRequest.disable();
+                }
+                step(StepRequest.STEP_OUT);
+                leavingOutOfScope = true;
+            } else if (options.getMode() == RecordingOptions.Mode.LINE) {
+                step(-1);
+                if (entryRequest == null) {
+                    createMethodRequests(false);
+                } else {
+                    entryRequest.enable();
+                }
+                searching = true;
+            }
+        }
+
+        // Emplacement dans la portée : en mode LINE, fin de l'attente d'une entrée, le pas à pas reprend
+        void inScope() {
+            if (!searching) return;
+            searching = false;
+            entryRequest.disable();
+            step(StepRequest.STEP_INTO);
+        }
+
+        // Une requête JDWP : la méthode appelante est-elle dans la portée ?
+        private boolean calledFromScope() {
+            try {
+                List<StackFrame> callers = thread.frames(1, 1);
+                return scope.includes(callers.get(0).location().method());
+            } catch (IncompatibleThreadStateException | IndexOutOfBoundsException e) {
+                return false;
+            }
+        }
+
+        // Retour dans l'appelant après un STEP_OUT : on rétablit les requêtes du mode choisi
+        void resume() {
+            leavingOutOfScope = false;
+            if (options.getMode() == RecordingOptions.Mode.LINE) {
+                step(StepRequest.STEP_INTO);
+                return;
+            }
+            entryRequest.enable();
+            exitRequest.enable();
+            step(lineWindows.isEmpty() ? -1 : StepRequest.STEP_OVER);
+        }
+
+        // Entrée dans une méthode choisie : le pas à pas passe sur sa frame
+        void openLineWindow(Method method, ExecutionSnapshot entry) {
+            if (entry == null || !options.isLineLevel(method)) return;
+            lineWindows.addLast(entry.getStackDepth());
+            step(StepRequest.STEP_OVER);
+        }
+
+        // Sortie d'une méthode choisie : le pas à pas reprend dans la méthode choisie englobante, s'il y en a une
+        void closeLineWindow(ExecutionSnapshot exit) {
+            if (exit == null || lineWindows.isEmpty() || lineWindows.peekLast() != exit.getStackDepth()) {
+                return;
+            }
+            lineWindows.pollLast();
+            step(lineWindows.isEmpty() ? -1 : StepRequest.STEP_OVER);
+        }
+    }
+}
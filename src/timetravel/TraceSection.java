@@ -0,0 +1,156 @@
+package timetravel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Section d'un fichier de trace mappée par morceaux : un MappedByteBuffer ne dépasse pas 2 Go, une section si.
+ * Chaque morceau couvre chunkSize octets et déborde de 8 octets sur le suivant : une valeur primitive commencée
+ * dans un morceau s'y lit en entier. Les positions sont comptées depuis le début de la section.
+ * Les structures par pas (passages, profondeurs, historiques, appels, sortie) y sont lues en place, aux positions
+ * notées à l'ouverture ; le curseur ne sert qu'à parcourir les tables une fois, à l'ouverture.
+ */
+final class TraceSection {
+    // Morceaux de 1 Go : puissance de 2, pour trouver le morceau d'une position par décalage
+    static final int CHUNK_SIZE = 1 << 30;
+    private static final int OVERLAP = 8;
+
+    private final ByteBuffer[] chunks;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final long length;
+    private long position;
+
+    TraceSection(FileChannel channel, long start, long length, int chunkSize) throws IOException {
+        if (Integer.bitCount(chunkSize) != 1 || chunkSize < OVERLAP) {
+            throw new IllegalArgumentException("Taille de morceau invalide : " + chunkSize);
+        }
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        this.length = length;
+        this.chunks = new ByteBuffer[(int) Math.max(1, (length + chunkSize - 1) >>> chunkShift)];
+        for (int i = 0; i < chunks.length; i++) {
+            long from = (long) i << chunkShift;
+            long size = Math.min(length - from, (long) chunkSize + OVERLAP);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start + from, Math.max(0, size));
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    // Lecture à la suite depuis le curseur
+    long position() {
+        return position;
+    }
+
+    void skip(long bytes) {
+        position += bytes;
+    }
+
+    byte get() {
+        byte value = get(position);
+        position += 1;
+        return value;
+    }
+
+    int getInt() {
+        int value = getInt(position);
+        position += 4;
+        return value;
+    }
+
+    long getLong() {
+        long value = getLong(position);
+        position += 8;
+        return value;
+    }
+
+    // Chaîne écrite par TraceFile.writeString : longueur en octets (-1 pour null) puis UTF-8
+    String getString() {
+        int size = getInt();
+        if (size < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        get(position, bytes);
+        position += size;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Lecture à une position donnée ; sans effet sur le curseur, donc possible depuis plusieurs threads
+    byte get(long at) {
+        return chunk(at).get(offset(at));
+    }
+
+    char getChar(long at) {
+        return chunk(at).getChar(offset(at));
+    }
+
+    int getInt(long at) {
+        return chunk(at).getInt(offset(at));
+    }
+
+    long getLong(long at) {
+        return chunk(at).getLong(offset(at));
+    }
+
+    // Octets à partir de at, morceau par morceau
+    void get(long at, byte[] bytes) {
+        int done = 0;
+        while (done < bytes.length) {
+            ByteBuffer chunk = chunk(at + done).duplicate();
+            int offset = offset(at + done);
+            int count = (int) Math.min(bytes.length - done, chunkMask + 1 - offset);
+            chunk.position(offset);
+            chunk.get(bytes, done, count);
+            done += count;
+        }
+    }
+
+    // count caractères UTF-16 à partir de at
+    String getChars(long at, int count) {
+        char[] chars = new char[count];
+        for (int i = 0; i < count; i++) {
+            chars[i] = getChar(at + 2L * i);
+        }
+        return new String(chars);
+    }
+
+    // Entiers consécutifs à partir de at, comme Arrays.binarySearch sur [from, to)
+    int binarySearch(long at, int from, int to, int key) {
+        return binarySearch(at, 4, from, to, key);
+    }
+
+    // Enregistrements de stride octets commençant par un entier trié, recherchés sur cet entier
+    int binarySearch(long at, int stride, int from, int to, int key) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = getInt(at + (long) stride * middle);
+            if (value < key) {
+                low = middle + 1;
+            } else if (value > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private ByteBuffer chunk(long at) {
+        if (at < 0 || at >= length) {
+            throw new IndexOutOfBoundsException("Position " + at + " hors de la section (" + length + " octets)");
+        }
+        return chunks[(int) (at >>> chunkShift)];
+    }
+
+    private int offset(long at) {
+        return (int) (at & chunkMask);
+    }
+}
@@ -0,0 +1,141 @@
+package timetravel;
+
+import com.sun.jdi.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Représentation compacte des valeurs capturées : un tag de type et 64 bits.
+ * Primitifs : bits bruts ; chaînes : id du contenu interné ; objets : uniqueID JDI,
+ * avec leur description ("instance of ...") relevée une seule fois par objet.
+ * Comparer deux valeurs revient à comparer tag et bits ; le texte n'est produit qu'à l'affichage.
+ */
+public class ValueTable {
+    public static final byte UNSET = 0;
+    public static final byte NULL = 1;
+    public static final byte BOOLEAN = 2;
+    public static final byte BYTE = 3;
+    public static final byte CHAR = 4;
+    public static final byte SHORT = 5;
+    public static final byte INT = 6;
+    public static final byte LONG = 7;
+    public static final byte FLOAT = 8;
+    public static final byte DOUBLE = 9;
+    public static final byte STRING = 10;
+    public static final byte OBJECT = 11;
+    // Valeur de retour d'une méthode void (MethodExitEvent.returnValue)
+    public static final byte VOID = 12;
+
+    private final StringDictionary strings;
+    private final Map<Long, Integer> stringIdsByObject;
+    private final StringDictionary objectDescriptions;
+    private final Map<Long, Integer> descriptionIdsByObject;
+
+    public ValueTable() {
+        this(new StringDictionary(), new StringDictionary());
+    }
+
+    private ValueTable(StringDictionary strings, StringDictionary objectDescriptions) {
+        this.strings = strings;
+        this.stringIdsByObject = new HashMap<>();
+        this.objectDescriptions = objectDescriptions;
+        this.descriptionIdsByObject = new HashMap<>();
+    }
+
+    public static byte tagOf(Value value) {
+        if (value == null) return NULL;
+        if (value instanceof VoidValue) return VOID;
+        if (value instanceof BooleanValue) return BOOLEAN;
+        if (value instanceof ByteValue) return BYTE;
+        if (value instanceof CharValue) return CHAR;
+        if (value instanceof ShortValue) return SHORT;
+        if (value instanceof IntegerValue) return INT;
+        if (value instanceof LongValue) return LONG;
+        if (value instanceof FloatValue) return FLOAT;
+        if (value instanceof DoubleValue) return DOUBLE;
+        if (value instanceof StringReference) return STRING;
+        return OBJECT;
+    }
+
+    // Bits de la valeur selon son tag ; une chaîne ou un objet vu pour la première fois coûte une requête JDWP
+    public synchronized long bitsOf(Value value, byte tag) {
+        switch (tag) {
+            case BOOLEAN: return ((BooleanValue) value).value() ? 1 : 0;
+            case BYTE: return ((ByteValue) value).value();
+            case CHAR: return ((CharValue) value).value();
+            case SHORT: return ((ShortValue) value).value();
+            case INT: return ((IntegerValue) value).value();
+            case LONG: return ((LongValue) value).value();
+            case FLOAT: return Float.floatToIntBits(((FloatValue) value).value());
+            case DOUBLE: return Double.doubleToLongBits(((DoubleValue) value).value());
+            case STRING: {
+                // Une chaîne Java est immuable : son contenu n'est lu qu'une fois par objet
+                StringReference string = (StringReference) value;
+                Integer id = stringIdsByObject.get(string.uniqueID());
+                if (id == null) {
+                    id = strings.idOf(string.value());
+                    stringIdsByObject.put(string.uniqueID(), id);
+                }
+                return id;
+            }
+            case OBJECT: {
+                ObjectReference object = (ObjectReference) value;
+                if (!descriptionIdsByObject.containsKey(object.uniqueID())) {
+                    descriptionIdsByObject.put(object.uniqueID(), objectDescriptions.idOf(object.toString()));
+                }
+                return object.uniqueID();
+            }
+            default: return 0;
+        }
+    }
+
+    // Vrai si la valeur n'a encore jamais été vue (sa lecture demande alors une requête JDWP)
+    public synchronized boolean isNew(Value value, byte tag) {
+        if (tag == STRING) return !stringIdsByObject.containsKey(((StringReference) value).uniqueID());
+        if (tag == OBJECT) return !descriptionIdsByObject.containsKey(((ObjectReference) value).uniqueID());
+        return false;
+    }
+
+    // Contenu des chaînes et descriptions des objets ; les uniqueID des chaînes ne servent qu'à la capture
+    synchronized void writeTo(DataOutputStream out) throws IOException {
+        strings.writeTo(out);
+        objectDescriptions.writeTo(out);
+        out.writeInt(descriptionIdsByObject.size());
+        for (Map.Entry<Long, Integer> entry : descriptionIdsByObject.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    static ValueTable readFrom(TraceSection section) {
+        ValueTable table = new ValueTable(StringDictionary.readFrom(section), StringDictionary.readFrom(section));
+        int count = section.getInt();
+        for (int i = 0; i < count; i++) {
+            table.descriptionIdsByObject.put(section.getLong(), section.getInt());
+        }
+        return table;
+    }
+
+    // Même texte que Value.toString() au moment de la capture
+    public synchronized String format(byte tag, long bits) {
+        switch (tag) {
+            case UNSET: return "_";
+            case NULL: return "null";
+            case BOOLEAN: return String.valueOf(bits != 0);
+            case BYTE: return String.valueOf((byte) bits);
+            case CHAR: return String.valueOf((char) bits);
+            case SHORT: return String.valueOf((short) bits);
+            case INT: return String.valueOf((int) bits);
+            case LONG: return String.valueOf(bits);
+            case FLOAT: return String.valueOf(Float.intBitsToFloat((int) bits));
+            case DOUBLE: return String.valueOf(Double.longBitsToDouble(bits));
+            case VOID: return "void";
+            case STRING: return "\"" + strings.get((int) bits) + "\"";
+            case OBJECT: {
+                Integer description = descriptionIdsByObject.get(bits);
+                return description != null ? objectDescriptions.get(description) : "instance (id=" + bits + ")";
+            }
+            default: return "?";
+        }
+    }
+}
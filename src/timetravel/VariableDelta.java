@@ -0,0 +1,86 @@
+package timetravel;
+
+import java.util.*;
+
+/**
+ * Différence entre les variables locales d'un snapshot et celles du snapshot précédent de la même frame.
+ * Un keyframe est simplement un delta appliqué sur une vue vide.
+ * Les valeurs restent sous forme typée (tag + bits, voir ValueTable).
+ */
+public class VariableDelta {
+    private static final String[] NO_NAMES = new String[0];
+    private static final byte[] NO_TAGS = new byte[0];
+    private static final long[] NO_BITS = new long[0];
+
+    private final String[] changedNames;
+    private final byte[] changedTags;
+    private final long[] changedBits;
+    private final String[] removedNames;
+
+    private VariableDelta(String[] changedNames, byte[] changedTags, long[] changedBits, String[] removedNames) {
+        this.changedNames = changedNames;
+        this.changedTags = changedTags;
+        this.changedBits = changedBits;
+        this.removedNames = removedNames;
+    }
+
+    // Encode toutes les variables (aucune base)
+    public static VariableDelta keyframe(VariableValues variables) {
+        return between(new VariableValues(1), variables);
+    }
+
+    // Ne garde que les liaisons ajoutées, modifiées ou disparues entre deux vues complètes
+    public static VariableDelta between(VariableValues previous, VariableValues current) {
+        int changed = 0;
+        boolean[] isChanged = new boolean[current.size()];
+        for (int i = 0; i < current.size(); i++) {
+            int before = previous.indexOf(current.nameAt(i));
+            if (before < 0 || previous.tagAt(before) != current.tagAt(i)
+                    || previous.bitsAt(before) != current.bitsAt(i)) {
+                isChanged[i] = true;
+                changed++;
+            }
+        }
+
+        String[] names = changed == 0 ? NO_NAMES : new String[changed];
+        byte[] tags = changed == 0 ? NO_TAGS : new byte[changed];
+        long[] bits = changed == 0 ? NO_BITS : new long[changed];
+        for (int i = 0, c = 0; i < current.size(); i++) {
+            if (isChanged[i]) {
+                names[c] = current.nameAt(i);
+                tags[c] = current.tagAt(i);
+                bits[c] = current.bitsAt(i);
+                c++;
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (int i = 0; i < previous.size(); i++) {
+            if (current.indexOf(previous.nameAt(i)) < 0) {
+                removed.add(previous.nameAt(i));
+            }
+        }
+
+        return new VariableDelta(names, tags, bits, removed.isEmpty() ? NO_NAMES : removed.toArray(NO_NAMES));
+    }
+
+    public void applyTo(VariableValues variables) {
+        for (String name : removedNames) {
+            variables.remove(name);
+        }
+        for (int i = 0; i < changedNames.length; i++) {
+            variables.put(changedNames[i], changedTags[i], changedBits[i]);
+        }
+    }
+
+    public int size() {
+        return changedNames.length + removedNames.length;
+    }
+
+    int changedCount() { return changedNames.length; }
+    String changedName(int index) { return changedNames[index]; }
+    byte changedTag(int index) { return changedTags[index]; }
+    long changedBits(int index) { return changedBits[index]; }
+    int removedCount() { return removedNames.length; }
+    String removedName(int index) { return removedNames[index]; }
+}
@@ -1,39 +1,55 @@
 package timetravel;
 
-import com.sun.jdi.Value;
-
 public class VariableModification {
     private final String variableName;
-    private final String oldValue;
-    private final String newValue;
+    // Valeurs gardées sous forme typée, mises en texte par getOldValue / getNewValue
+    private final ValueTable values;
+    private final byte oldTag;
+    private final long oldBits;
+    private final byte newTag;
+    private final long newBits;
     private final int snapshotId;
     private final int lineNumber;
     private final String methodName;
     private final long timestamp;
 
-    public VariableModification(String variableName, String oldValue, String newValue,
-                                int snapshotId, int lineNumber, String methodName) {
+    public VariableModification(String variableName, ValueTable values, byte oldTag, long oldBits,
+                                byte newTag, long newBits, int snapshotId, int lineNumber, String methodName) {
+        this(variableName, values, oldTag, oldBits, newTag, newBits, snapshotId, lineNumber, methodName,
+                System.currentTimeMillis());
+    }
+
+    // Modification relue depuis un fichier de trace, avec l'horodatage de l'enregistrement
+    VariableModification(String variableName, ValueTable values, byte oldTag, long oldBits, byte newTag, long newBits,
+                         int snapshotId, int lineNumber, String methodName, long timestamp) {
         this.variableName = variableName;
-        this.oldValue = oldValue;
-        this.newValue = newValue;
+        this.values = values;
+        this.oldTag = oldTag;
+        this.oldBits = oldBits;
+        this.newTag = newTag;
+        this.newBits = newBits;
         this.snapshotId = snapshotId;
         this.lineNumber = lineNumber;
         this.methodName = methodName;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
     }
 
 
     public String getVariableName() { return variableName; }
-    public String getOldValue() { return oldValue; }
-    public String getNewValue() { return newValue; }
+    public String getOldValue() { return values.format(oldTag, oldBits); }
+    public String getNewValue() { return values.format(newTag, newBits); }
     public int getSnapshotId() { return snapshotId; }
     public int getLineNumber() { return lineNumber; }
     public String getMethodName() { return methodName; }
     public long getTimestamp() { return timestamp; }
+    byte getOldTag() { return oldTag; }
+    long getOldBits() { return oldBits; }
+    byte getNewTag() { return newTag; }
+    long getNewBits() { return newBits; }
 
     @Override
     public String toString() {
         return String.format("%s: %s → %s (ligne %d dans %s())",
-                variableName, oldValue, newValue, lineNumber, methodName);
+                variableName, getOldValue(), getNewValue(), lineNumber, methodName);
     }
 }
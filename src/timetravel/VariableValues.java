@@ -0,0 +1,82 @@
+package timetravel;
+
+import java.util.*;
+
+/**
+ * Variables locales d'une frame sous forme typée : noms, tags et bits en tableaux parallèles.
+ * Les frames n'ont que quelques variables, la recherche par nom est donc linéaire.
+ */
+public class VariableValues {
+    private String[] names;
+    private byte[] tags;
+    private long[] bits;
+    private int size;
+
+    public VariableValues() {
+        this(8);
+    }
+
+    public VariableValues(int capacity) {
+        this.names = new String[Math.max(capacity, 1)];
+        this.tags = new byte[names.length];
+        this.bits = new long[names.length];
+    }
+
+    public int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i] == name) return i;
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public void put(String name, byte tag, long valueBits) {
+        int index = indexOf(name);
+        if (index < 0) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                tags = Arrays.copyOf(tags, size * 2);
+                bits = Arrays.copyOf(bits, size * 2);
+            }
+            index = size++;
+            names[index] = name;
+        }
+        tags[index] = tag;
+        bits[index] = valueBits;
+    }
+
+    public void remove(String name) {
+        int index = indexOf(name);
+        if (index < 0) return;
+        size--;
+        names[index] = names[size];
+        tags[index] = tags[size];
+        bits[index] = bits[size];
+        names[size] = null;
+    }
+
+    public VariableValues copy() {
+        VariableValues copy = new VariableValues(names.length);
+        System.arraycopy(names, 0, copy.names, 0, size);
+        System.arraycopy(tags, 0, copy.tags, 0, size);
+        System.arraycopy(bits, 0, copy.bits, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    public int size() { return size; }
+    public String nameAt(int index) { return names[index]; }
+    public byte tagAt(int index) { return tags[index]; }
+    public long bitsAt(int index) { return bits[index]; }
+
+    // Texte affichable de chaque variable, produit seulement à la demande
+    public Map<String, String> format(ValueTable values) {
+        Map<String, String> formatted = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            formatted.put(names[i], values.format(tags[i], bits[i]));
+        }
+        return formatted;
+    }
+}
@@ -0,0 +1,61 @@
+package timetravel;
+
+import java.util.List;
+
+import static timetravel.RecordingTestSupport.check;
+
+/**
+ * Enregistrement armé : tant que le déclencheur n'est pas atteint, les index ne dépassent pas l'anneau des derniers
+ * pas (plus une tranche) ; une fois le déclencheur atteint, ils commencent exactement au premier pas gardé.
+ */
+public class ArmedRecordingIndicesTest {
+    private static final int PRE_TRIGGER = 300;
+
+    public static void main(String[] args) throws Exception {
+        TimelineManager timelineManager = new TimelineManager();
+        int[] maxArmedPostings = new int[1];
+        int[] triggerId = {-1};
+        TraceRecorder.Listener listener = new TraceRecorder.Listener() {
+            // Sur le thread d'indexation, juste après l'indexation du snapshot
+            @Override
+            public void snapshotRecorded(ExecutionSnapshot snapshot, int snapshotCount) {
+                if (triggerId[0] < 0) {
+                    maxArmedPostings[0] = Math.max(maxArmedPostings[0],
+                            timelineManager.getLocationIndex().entryCount());
+                }
+            }
+
+            @Override
+            public void triggerFired(String trigger, int snapshotId) {
+                triggerId[0] = snapshotId;
+            }
+        };
+        TraceRecorder recorder = RecordingTestSupport.recorder(
+                RecordingTestSupport.launch(2_000, timelineManager), timelineManager, listener,
+                "--trigger=var:i>=1900", "--pre-trigger=" + PRE_TRIGGER);
+        recorder.record();
+
+        int bound = PRE_TRIGGER + timelineManager.getSegmentSize();
+        check(triggerId[0] > 10 * PRE_TRIGGER, "Déclencheur atteint trop tôt : " + triggerId[0]);
+        check(maxArmedPostings[0] <= bound, "Index non bornés pendant l'armement : " + maxArmedPostings[0]);
+
+        int first = timelineManager.getFirstSnapshotId();
+        check(first == triggerId[0] - PRE_TRIGGER, "Premier pas gardé : " + first + ", déclencheur : " + triggerId[0]);
+        int postings = timelineManager.getLocationIndex().entryCount();
+        check(postings == timelineManager.getTimelineSize() - first,
+                "Passages hors de la chronologie gardée : " + postings);
+        DepthIndex depthIndex = timelineManager.getDepthIndex(0);
+        check(depthIndex.idAt(depthIndex.firstStep()) == first, "Index de profondeur non ramené au premier pas gardé");
+        for (TimelineManager.MethodCallRecord call : timelineManager.getAllMethodCalls()) {
+            check(call.getSnapshotId() >= first || !call.hasReturned(), "Appel d'avant le premier pas gardé : " + call);
+        }
+        for (List<VariableModification> history : timelineManager.getAllVariablesWithHistory().values()) {
+            for (VariableModification modification : history) {
+                check(modification.getSnapshotId() >= first, "Modification d'avant le premier pas gardé");
+            }
+        }
+
+        System.out.println("OK déclencheur au snapshot #" + triggerId[0] + ", au plus " + maxArmedPostings[0]
+                + " passages indexés pendant l'armement, " + postings + " après");
+    }
+}
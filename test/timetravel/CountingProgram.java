@@ -0,0 +1,24 @@
+package timetravel;
+
+/**
+ * Programme cible des tests : une boucle courte, appelée args[0] fois, qui modifie ses variables à chaque pas
+ * et écrit régulièrement sur la sortie standard.
+ */
+public class CountingProgram {
+    static int step(int i, int acc) {
+        int x = acc + i * 3;
+        return x % 1000;
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int acc = 0;
+        for (int i = 0; i < rounds; i++) {
+            acc = step(i, acc);
+            if (i % 100 == 0) {
+                System.out.println("round " + i + " acc=" + acc);
+            }
+        }
+        System.out.println("acc=" + acc);
+    }
+}
@@ -0,0 +1,62 @@
+package timetravel;
+
+import java.util.List;
+
+import static timetravel.RecordingTestSupport.check;
+
+/**
+ * Enregistrement bien plus long que le budget en mode flight recorder : la chronologie ne garde que les N derniers
+ * pas, et les index qui l'accompagnent (passages par ligne, profondeur, appels, historiques, sortie) sont élagués
+ * avec elle. Leur nombre d'entrées reste borné par le budget plus une tranche, quelle que soit la durée.
+ */
+public class FlightRecorderIndicesTest {
+    private static final int BUDGET = 600;
+
+    public static void main(String[] args) throws Exception {
+        TimelineManager timelineManager = new TimelineManager();
+        TraceRecorder recorder = RecordingTestSupport.recorder(
+                RecordingTestSupport.launch(3_000, timelineManager), timelineManager,
+                "--budget=" + BUDGET, "--flight-recorder");
+        recorder.record();
+
+        int size = timelineManager.getTimelineSize();
+        int first = timelineManager.getFirstSnapshotId();
+        int bound = BUDGET + timelineManager.getSegmentSize();
+        check(size > 10 * BUDGET, "Enregistrement trop court pour le test : " + size);
+        check(size - first == BUDGET, "Snapshots lisibles : " + (size - first) + " au lieu de " + BUDGET);
+        check(!timelineManager.seek(first - 1), "Un snapshot supprimé est encore lisible");
+        check(timelineManager.seek(first), "Le premier snapshot gardé n'est pas lisible");
+
+        int postings = timelineManager.getLocationIndex().entryCount();
+        check(postings <= bound, "Passages par ligne non élagués : " + postings);
+
+        DepthIndex depthIndex = timelineManager.getDepthIndex(0);
+        int steps = depthIndex.size() - depthIndex.firstStep();
+        check(steps <= bound, "Index de profondeur non élagué : " + steps);
+        check(depthIndex.nextAtOrAbove(first) > first, "Step over impossible depuis le premier snapshot gardé");
+
+        List<TimelineManager.MethodCallRecord> calls = timelineManager.getAllMethodCalls();
+        check(calls.size() <= bound, "Appels non élagués : " + calls.size());
+        for (TimelineManager.MethodCallRecord call : calls) {
+            check(call.getSnapshotId() >= first - timelineManager.getSegmentSize() || !call.hasReturned(),
+                    "Appel retourné d'avant la chronologie : " + call);
+        }
+        check(timelineManager.getAllMethodCalls().get(0).getChildren().size() <= bound,
+                "Enfants de main non élagués");
+
+        int modifications = 0;
+        for (List<VariableModification> history : timelineManager.getAllVariablesWithHistory().values()) {
+            modifications += history.size();
+        }
+        check(modifications <= 4 * bound, "Historiques des variables non élagués : " + modifications);
+
+        OutputLog output = timelineManager.getOutputLog();
+        check(output.firstOffset() > 0, "Sortie non élaguée");
+        check(output.retainedLength() < output.length() / 4,
+                "Sortie gardée : " + output.retainedLength() + " sur " + output.length());
+
+        System.out.println("OK " + size + " snapshots, " + (size - first) + " lisibles, " + postings + " passages, "
+                + steps + " pas, " + calls.size() + " appels, " + modifications + " modifications, "
+                + output.retainedLength() + " caractères de sortie");
+    }
+}
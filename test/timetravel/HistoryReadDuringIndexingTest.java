@@ -0,0 +1,88 @@
+package timetravel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static timetravel.RecordingTestSupport.check;
+
+/**
+ * Lecture des historiques (variables, appels) pendant que le thread d'indexation de la CapturePipeline
+ * les complète : chaque lecture doit être une copie cohérente, triée et qui ne rétrécit jamais.
+ */
+public class HistoryReadDuringIndexingTest {
+    public static void main(String[] args) throws Exception {
+        TimelineManager timelineManager = new TimelineManager();
+        TraceRecorder recorder = RecordingTestSupport.recorder(
+                RecordingTestSupport.launch(2_000, timelineManager), timelineManager, "--queue=64");
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread recording = new Thread(() -> {
+            try {
+                recorder.record();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }, "test-recorder");
+        recording.start();
+
+        int reads = 0;
+        int readsWhileRecording = 0;
+        int lastCallCount = 0;
+        int lastAccHistory = 0;
+        while (true) {
+            boolean running = recording.isAlive();
+            try {
+                List<TimelineManager.MethodCallRecord> calls = timelineManager.getAllMethodCalls();
+                check(calls.size() >= lastCallCount, "La liste des appels a rétréci");
+                lastCallCount = calls.size();
+                checkSorted(calls);
+                checkSorted(timelineManager.getCallsToMethod("step"));
+                checkSorted(timelineManager.getAllMethodCallsUpToCurrent());
+
+                List<VariableModification> acc = timelineManager.getVariableHistory("acc");
+                check(acc.size() >= lastAccHistory, "L'historique de acc a rétréci");
+                lastAccHistory = acc.size();
+                checkModificationsSorted(acc);
+                for (Map.Entry<String, List<VariableModification>> entry
+                        : timelineManager.getAllVariablesWithHistory().entrySet()) {
+                    for (VariableModification modification : entry.getValue()) {
+                        check(modification.getVariableName().equals(entry.getKey()), "Modification d'une autre variable");
+                    }
+                }
+                timelineManager.getAllVariablesWithHistoryUpToCurrent();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+                break;
+            }
+            reads++;
+            if (running) {
+                readsWhileRecording++;
+            } else {
+                break;
+            }
+        }
+        recording.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError("Lecture pendant l'indexation", failure.get());
+        }
+        check(readsWhileRecording > 0, "Aucune lecture pendant l'enregistrement");
+        check(lastCallCount > 2_000, "Appels de step manquants : " + lastCallCount);
+        System.out.println("OK " + reads + " lectures, dont " + readsWhileRecording + " pendant l'indexation, "
+                + timelineManager.getTimelineSize() + " snapshots");
+    }
+
+    private static void checkSorted(List<TimelineManager.MethodCallRecord> calls) {
+        for (int i = 1; i < calls.size(); i++) {
+            check(calls.get(i - 1).getSnapshotId() <= calls.get(i).getSnapshotId(), "Appels hors d'ordre");
+        }
+    }
+
+    private static void checkModificationsSorted(List<VariableModification> modifications) {
+        for (int i = 1; i < modifications.size(); i++) {
+            check(modifications.get(i - 1).getSnapshotId() <= modifications.get(i).getSnapshotId(),
+                    "Modifications hors d'ordre");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package timetravel;
+
+import com.sun.jdi.Bootstrap;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.connect.Connector;
+import com.sun.jdi.connect.LaunchingConnector;
+
+import java.io.*;
+import java.util.Map;
+
+/**
+ * Outils communs aux tests : lancement de CountingProgram sous JDI avec le classpath du test,
+ * et vérifications qui lèvent une AssertionError (les tests sont de simples classes avec un main).
+ */
+final class RecordingTestSupport {
+    private RecordingTestSupport() {
+    }
+
+    // VM cible lancée, suspendue avant sa classe principale ; la sortie est relayée vers timelineManager
+    static VirtualMachine launch(int rounds, TimelineManager timelineManager) throws Exception {
+        LaunchingConnector connector = Bootstrap.virtualMachineManager().defaultConnector();
+        Map<String, Connector.Argument> arguments = connector.defaultArguments();
+        arguments.get("main").setValue(CountingProgram.class.getName() + " " + rounds);
+        arguments.get("options").setValue("-cp " + System.getProperty("java.class.path"));
+        VirtualMachine vm = connector.launch(arguments);
+        Thread reader = new Thread(() -> {
+            try (Reader in = new InputStreamReader(vm.process().getInputStream())) {
+                char[] buffer = new char[1024];
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    timelineManager.appendProgramOutput(new String(buffer, 0, n));
+                }
+            } catch (IOException e) {
+                // Fin du processus cible
+            }
+        }, "test-output");
+        reader.setDaemon(true);
+        reader.start();
+        return vm;
+    }
+
+    // Recorder prêt à enregistrer CountingProgram avec les options données (même syntaxe que la ligne de commande)
+    static TraceRecorder recorder(VirtualMachine vm, TimelineManager timelineManager, String... args) {
+        return recorder(vm, timelineManager, new TraceRecorder.Listener() {}, args);
+    }
+
+    static TraceRecorder recorder(VirtualMachine vm, TimelineManager timelineManager, TraceRecorder.Listener listener,
+                                  String... args) {
+        TraceRecorder recorder = new TraceRecorder(vm, timelineManager, RecordingOptions.fromArgs(args), listener);
+        recorder.enableClassPrepareRequest(CountingProgram.class.getName());
+        return recorder;
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
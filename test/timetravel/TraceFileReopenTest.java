@@ -0,0 +1,166 @@
+package timetravel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static timetravel.RecordingTestSupport.check;
+
+/**
+ * Enregistrement élagué (flight recorder) écrit dans un fichier de trace puis rouvert avec des morceaux de 4 Ko :
+ * chaque section est mappée en plusieurs morceaux et des valeurs chevauchent leurs limites. Les index lus en place
+ * (passages, profondeurs, sortie, appels, historiques) doivent répondre comme ceux de l'enregistrement.
+ */
+public class TraceFileReopenTest {
+    private static final int CHUNK_SIZE = 1 << 12;
+
+    public static void main(String[] args) throws Exception {
+        TimelineManager recorded = new TimelineManager();
+        TraceRecorder recorder = RecordingTestSupport.recorder(
+                RecordingTestSupport.launch(1_500, recorded), recorded, "--budget=2000", "--flight-recorder");
+        recorder.record();
+
+        Path file = Files.createTempFile("reopen", ".trace");
+        try {
+            recorded.save(file);
+            check(Files.size(file) > 8 * CHUNK_SIZE, "Fichier trop petit pour le test : " + Files.size(file));
+            try (TimelineManager reopened = TraceFile.open(file, CHUNK_SIZE)) {
+                check(recorded.getFirstSnapshotId() > 0, "Enregistrement non élagué");
+                compare("chronologie", describeTimeline(recorded), describeTimeline(reopened));
+                compare("passages", describeLocations(recorded), describeLocations(reopened));
+                compare("profondeurs", describeDepths(recorded), describeDepths(reopened));
+                compare("sortie", describeOutput(recorded), describeOutput(reopened));
+                compare("appels", describeCalls(recorded), describeCalls(reopened));
+                compare("historiques", describeHistories(recorded), describeHistories(reopened));
+
+                boolean rejected = false;
+                try {
+                    reopened.save(Files.createTempFile("reopen", ".trace"));
+                } catch (IllegalStateException e) {
+                    rejected = true;
+                }
+                check(rejected, "Une chronologie relue a été réécrite");
+                System.out.println("OK " + (reopened.getTimelineSize() - reopened.getFirstSnapshotId())
+                        + " snapshots relus, " + reopened.getAllMethodCalls().size() + " appels, fichier de "
+                        + Files.size(file) + " octets");
+            }
+        } finally {
+            recorded.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void compare(String what, List<String> expected, List<String> actual) {
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            check(expected.get(i).equals(actual.get(i)),
+                    what + " : " + expected.get(i) + " au lieu de " + actual.get(i) + " après réouverture");
+        }
+        check(expected.size() == actual.size(), what + " : " + actual.size() + " lignes au lieu de " + expected.size());
+    }
+
+    private static List<String> describeTimeline(TimelineManager tm) {
+        List<String> lines = new ArrayList<>();
+        lines.add(tm.getFirstSnapshotId() + ".." + tm.getTimelineSize());
+        for (int id = tm.getFirstSnapshotId(); id < tm.getTimelineSize(); id++) {
+            ExecutionSnapshot snapshot = tm.getSnapshot(id);
+            lines.add(snapshot + " " + new TreeMap<>(snapshot.getVariables()));
+        }
+        return lines;
+    }
+
+    private static List<String> describeLocations(TimelineManager tm) {
+        LocationIndex index = tm.getLocationIndex();
+        Set<String> seen = new HashSet<>();
+        List<String> lines = new ArrayList<>();
+        for (int id = tm.getFirstSnapshotId(); id < tm.getTimelineSize(); id++) {
+            ExecutionSnapshot snapshot = tm.getSnapshot(id);
+            String file = snapshot.getSourceFile();
+            int line = snapshot.getLineNumber();
+            if (!seen.add(file + ":" + line)) continue;
+            int hits = index.hitCount(file, line);
+            StringBuilder description = new StringBuilder(file + ":" + line + " " + hits + " "
+                    + index.countHitsBefore(file, line, id));
+            for (int hit = 0; hit < hits; hit++) {
+                description.append(' ').append(index.hitAt(file, line, hit));
+            }
+            lines.add(description.toString());
+        }
+        lines.add("entrées " + index.entryCount());
+        return lines;
+    }
+
+    private static List<String> describeDepths(TimelineManager tm) {
+        List<String> lines = new ArrayList<>();
+        for (ThreadTimeline thread : tm.getThreadTimelines()) {
+            DepthIndex index = thread.getDepthIndex();
+            lines.add(thread + " " + index.firstStep() + ".." + index.size());
+            for (int id = tm.getFirstSnapshotId() - 1; id <= tm.getTimelineSize(); id++) {
+                lines.add(id + " " + index.depthOf(id) + " " + index.stepOf(id) + " " + index.countBefore(id)
+                        + " " + index.nextAtOrAbove(id) + " " + index.previousAtOrAbove(id) + " " + index.exitOf(id)
+                        + " " + thread.nextSnapshotId(id) + " " + thread.previousSnapshotId(id));
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> describeOutput(TimelineManager tm) {
+        OutputLog output = tm.getOutputLog();
+        List<String> lines = new ArrayList<>();
+        lines.add(output.firstOffset() + ".." + output.length() + " " + output.retainedLength());
+        lines.add(output.substring(output.firstOffset(), output.length()));
+        lines.add(output.substring(output.firstOffset() + 3, output.length() - 5));
+        for (int offset = output.firstOffset() - 1; offset <= output.length(); offset++) {
+            lines.add(offset + " " + output.snapshotAt(offset));
+        }
+        return lines;
+    }
+
+    private static List<String> describeCalls(TimelineManager tm) {
+        MethodCallIndex index = tm.getMethodCallIndex();
+        List<String> lines = new ArrayList<>();
+        for (TimelineManager.MethodCallRecord call : tm.getAllMethodCalls()) {
+            lines.add(describe(call) + " " + index.stepCount(call));
+        }
+        for (TimelineManager.MethodCallRecord root : index.getRoots()) {
+            describeTree(root, lines);
+        }
+        for (int id = tm.getFirstSnapshotId(); id < tm.getTimelineSize(); id += 97) {
+            lines.add(id + " " + index.getCallsUpTo(id).size() + " " + index.getCallsToMethodUpTo("step", id).size());
+        }
+        lines.add(index.getCallsToMethod("step").size() + " " + index.getCallsToSignature("CountingProgram.step()").size()
+                + " " + index.getCallersOf("step") + " " + index.getStepsSpentIn("step"));
+        return lines;
+    }
+
+    private static void describeTree(TimelineManager.MethodCallRecord call, List<String> lines) {
+        lines.add("arbre " + describe(call));
+        for (TimelineManager.MethodCallRecord child : call.getChildren()) {
+            describeTree(child, lines);
+        }
+    }
+
+    private static String describe(TimelineManager.MethodCallRecord call) {
+        TimelineManager.MethodCallRecord parent = call.getParent();
+        return call.getSnapshotId() + "-" + call.getExitSnapshotId() + " " + call + " " + call.getArguments()
+                + " -> " + call.getReturnValue() + " thread " + call.getThreadId() + " profondeur " + call.getDepth()
+                + " parent " + (parent != null ? parent.getSnapshotId() : -1) + " enfants " + call.getChildren().size();
+    }
+
+    private static List<String> describeHistories(TimelineManager tm) {
+        List<String> lines = new ArrayList<>();
+        lines.add(tm.getAllTrackedVariableNames() + " " + tm.getTrackedVariablesWithModificationsCount());
+        Map<String, List<VariableModification>> histories = new TreeMap<>(tm.getAllVariablesWithHistory());
+        for (Map.Entry<String, List<VariableModification>> entry : histories.entrySet()) {
+            for (VariableModification modification : entry.getValue()) {
+                lines.add(modification.getSnapshotId() + " " + modification + " " + modification.getTimestamp());
+            }
+        }
+        for (int id = tm.getFirstSnapshotId(); id < tm.getTimelineSize(); id += 89) {
+            ExecutionSnapshot snapshot = tm.getSnapshot(id);
+            for (String name : new TreeSet<>(tm.getAllTrackedVariableNames())) {
+                lines.add(id + " " + name + " " + tm.getVariableHistoryUpToSnapshot(name, snapshot));
+            }
+        }
+        return lines;
+    }
+}